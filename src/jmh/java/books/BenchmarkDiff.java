@@ -0,0 +1,103 @@
+package books;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH CSV result files (see the jmh profile in pom.xml) and exits non-zero when a benchmark
+ * got slower, or allocates more per operation, by more than the threshold.
+ *
+ * <pre>java -cp ... books.BenchmarkDiff baseline.csv target/jmh-result.csv [thresholdPercent]</pre>
+ */
+public class BenchmarkDiff {
+
+    private record Result(String unit, double score, double error) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkDiff <baseline.csv> <current.csv> [thresholdPercent]");
+            System.exit(2);
+        }
+        Map<String, Result> baseline = read(Path.of(args[0]));
+        Map<String, Result> current = read(Path.of(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            Result after = entry.getValue();
+            if (before == null || before.score() == 0) {
+                System.out.printf("%-90s %14.3f %-10s (new)%n", entry.getKey(), after.score(), after.unit());
+                continue;
+            }
+            // time/op and B/op regress upwards, ops/time regresses downwards
+            boolean higherIsWorse = !after.unit().startsWith("ops/");
+            double change = (after.score() - before.score()) / before.score() * 100;
+            double worse = higherIsWorse ? change : -change;
+            boolean beyondNoise = Math.abs(after.score() - before.score()) > before.error() + after.error();
+            boolean regressed = worse > threshold && beyondNoise;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f -> %14.3f %-10s %+8.2f%% %s%n", entry.getKey(), before.score(),
+                    after.score(), after.unit(), change, regressed ? "REGRESSION" : "");
+        }
+        System.out.printf("%d regression(s) above %.1f%%%n", regressions, threshold);
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    private static Map<String, Result> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        List<String> header = split(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> row = split(line);
+            String name = row.get(benchmark);
+            // of the gc profiler's metrics only the normalized allocation rate is stable enough to compare
+            if (name.contains(":gc.") && !name.endsWith(":gc.alloc.rate.norm")) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(name);
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < row.size() && !row.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(row.get(i));
+                }
+            }
+            results.put(key.toString(), new Result(row.get(unit), parse(row.get(score)), parse(row.get(error))));
+        }
+        return results;
+    }
+
+    private static double parse(String value) {
+        return value.isEmpty() || value.equals("NaN") ? 0 : Double.parseDouble(value.replace(',', '.'));
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+}
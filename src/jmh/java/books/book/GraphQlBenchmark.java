@@ -0,0 +1,106 @@
+package books.book;
+
+import books.Application;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.graphql.ExecutionGraphQlResponse;
+import org.springframework.graphql.ExecutionGraphQlService;
+import org.springframework.graphql.support.DefaultExecutionGraphQlRequest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// full GraphQL execution (parse, validate, fetch, DataLoader dispatch, result building) without HTTP
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class GraphQlBenchmark {
+
+    private static final String BOOK_BY_ID = """
+            query findBookById($id: ID!) {
+                book(id: $id) { id title publishedYear author { id name } }
+            }
+            """;
+
+    private static final String PAGE_WITH_AUTHOR_BOOKS = """
+            query page($after: String) {
+                booksPaginated(first: 20, after: $after) {
+                    edges { cursor node { title author { name books { title } } } }
+                    pageInfo { hasNextPage endCursor }
+                }
+            }
+            """;
+
+    private static final String SEARCH = """
+            query search($text: String) {
+                search(text: $text, limit: 20) { ... on Book { title } ... on Author { name } }
+            }
+            """;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int books;
+
+    private ConfigurableApplicationContext context;
+    private ExecutionGraphQlService graphQlService;
+    private String deepCursor;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                // the query cache is off so that search measures the resolver, not cache hits on repeated inputs
+                .properties("spring.main.banner-mode=off", "logging.level.root=warn",
+                        "books.graphql.author-books.simulated-latency=0s",
+                        "books.cache.operations.search.max-size=0",
+                        "books.cache.operations.books-with-filter.max-size=0")
+                .run();
+        BookRepository repository = context.getBean(BookRepository.class);
+        repository.loadSynthetic(new CatalogDataProperties.Synthetic(Math.max(1, books / 10), books, 42L, 1.1));
+        graphQlService = context.getBean(ExecutionGraphQlService.class);
+        deepCursor = BookCursor.encode(BookOrder.ID, repository.findAll().get(books * 9 / 10));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ExecutionGraphQlResponse bookById() {
+        return execute(BOOK_BY_ID, Map.of("id", 1 + Math.floorMod(next++, books)));
+    }
+
+    @Benchmark
+    public ExecutionGraphQlResponse deepPageWithAuthorBooks() {
+        return execute(PAGE_WITH_AUTHOR_BOOKS, Map.of("after", deepCursor));
+    }
+
+    @Benchmark
+    public ExecutionGraphQlResponse search() {
+        return execute(SEARCH, Map.of("text", "spring " + Math.floorMod(next++, 64)));
+    }
+
+    private ExecutionGraphQlResponse execute(String document, Map<String, Object> variables) {
+        return graphQlService.execute(new DefaultExecutionGraphQlRequest(document, null, variables, null, "benchmark", null))
+                .block();
+    }
+
+}
@@ -0,0 +1,113 @@
+package books.book;
+
+import books.pagination.BookConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class RepositoryBenchmark {
+
+    private static final int KEYS = 1024;
+    private static final String[] QUERIES = {"spring", "java in", "reactive", "cloud native", "graphql", "in action"};
+    private static final BookFilter RECENT = new BookFilter("an", 2020);
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int books;
+
+    @Param({"HEAP", "COLUMNAR"})
+    private CatalogDataProperties.Storage storage;
+
+    // filters, searches and pages scatter over the shards; compare with the core count of the machine
+    @Param({"1", "4"})
+    private int shards;
+
+    private BookRepository repository;
+    private final Long[] ids = new Long[KEYS];
+    private List<Long> authorIds;
+    private Author writeAuthor;
+    private String deepIdCursor;
+    private String deepTitleCursor;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new BookRepository(new CatalogDataProperties(null, null, null, storage, shards, null));
+        repository.loadSynthetic(new CatalogDataProperties.Synthetic(Math.max(1, books / 10), books, 42L, 1.1));
+
+        Random random = new Random(7);
+        for (int i = 0; i < KEYS; i++) {
+            ids[i] = (long) (1 + random.nextInt(books));
+        }
+
+        // one DataLoader batch: the authors of a 24-book page
+        authorIds = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            authorIds.add(repository.findById(ids[i]).author().id());
+        }
+
+        writeAuthor = repository.findAuthorById(authorIds.getFirst());
+
+        int deep = books * 9 / 10;
+        deepIdCursor = BookCursor.encode(BookOrder.ID, repository.findAll().get(deep));
+        deepTitleCursor = BookCursor.encode(BookOrder.TITLE, repository.findAll().get(deep));
+    }
+
+    @Benchmark
+    public Book findById() {
+        return repository.findById(ids[next++ & (KEYS - 1)]);
+    }
+
+    @Benchmark
+    public List<Book> findBooksByAuthorIds() {
+        return repository.findBooksByAuthorIds(authorIds);
+    }
+
+    @Benchmark
+    public List<Book> findBooksWithFilter() {
+        return repository.findBooks(RECENT);
+    }
+
+    @Benchmark
+    public BookConnection findBooksPaginatedDeepCursor() {
+        return repository.findBooksPaginated(20, deepIdCursor, null, null);
+    }
+
+    @Benchmark
+    public BookConnection findBooksPaginatedDeepCursorByTitle() {
+        return repository.findBooksPaginated(20, deepTitleCursor, null, null, BookOrder.TITLE, null);
+    }
+
+    @Benchmark
+    public List<Object> search() {
+        return repository.search(QUERIES[Math.floorMod(next++, QUERIES.length)], 20);
+    }
+
+    // one single-book write and its undo, so the catalog size stays put: O(log n) per index on the heap, a copy
+    // of every row index on columnar storage
+    @Benchmark
+    public boolean addAndDeleteBook() {
+        Book book = repository.createBook("Benchmark Book", writeAuthor, 2025);
+        return repository.deleteBookById(book.id());
+    }
+
+}
@@ -0,0 +1,141 @@
+package books.book;
+
+import books.Application;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.graphql.client.HttpSyncGraphQlClient;
+import org.springframework.web.client.RestClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// the local multi-node harness: one Spring context per node on its own port, each holding only its partition of
+// the catalog (books.data.node), and a client that scatters a query over every node's /graphql and k-way merges
+// the answers. Compare -p nodes=1,2,4 on a machine with at least as many cores as nodes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ShardNodesBenchmark {
+
+    private static final String BOOKS_WITH_FILTER = """
+            query filter($authorName: String, $publishedAfter: Int) {
+                booksWithFilter(filter: { authorName: $authorName, publishedAfter: $publishedAfter }) {
+                    id title publishedYear author { id name }
+                }
+            }
+            """;
+
+    private static final String PAGE = """
+            query page($after: String) {
+                booksPaginated(first: 20, after: $after) {
+                    edges { cursor node { id title publishedYear author { id name } } }
+                }
+            }
+            """;
+
+    public record Edge(String cursor, Book node) {
+    }
+
+    @Param({"1", "2", "4"})
+    private int nodes;
+
+    @Param({"100000", "1000000"})
+    private int books;
+
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private final List<HttpSyncGraphQlClient> clients = new ArrayList<>();
+    private ExecutorService executor;
+    private String deepCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int authors = Math.max(1, books / 10);
+        // an id cursor is a position in every node's catalog, so one cursor pages all of them
+        deepCursor = BookCursor.encode(BookOrder.ID, new Book(books * 9L / 10, null, null, null));
+        for (int index = 0; index < nodes; index++) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                    .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=warn",
+                            "books.graphql.author-books.simulated-latency=0s",
+                            "books.cache.operations.search.max-size=0",
+                            "books.cache.operations.books-with-filter.max-size=0",
+                            "books.data.source=synthetic",
+                            "books.data.synthetic.authors=" + authors,
+                            "books.data.synthetic.books=" + books,
+                            "books.data.node.index=" + index,
+                            "books.data.node.count=" + nodes)
+                    .run();
+            contexts.add(context);
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            clients.add(HttpSyncGraphQlClient.create(RestClient.create("http://localhost:" + port + "/graphql")));
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        contexts.reversed().forEach(ConfigurableApplicationContext::close);
+    }
+
+    // every node answers for its own books; the partial results are each in id order
+    @Benchmark
+    public List<Book> booksWithFilter() throws InterruptedException {
+        List<List<Book>> partial = scatter(client -> client.document(BOOKS_WITH_FILTER)
+                .variable("authorName", "an")
+                .variable("publishedAfter", 2020)
+                .retrieveSync("booksWithFilter")
+                .toEntityList(Book.class));
+        return ShardedCatalog.merge(partial, BookOrder.ID::compare, Integer.MAX_VALUE);
+    }
+
+    // each node returns its first 20 books after the cursor; the first 20 of the merge are the page
+    @Benchmark
+    public List<Edge> deepPage() throws InterruptedException {
+        List<List<Edge>> partial = scatter(client -> client.document(PAGE)
+                .variable("after", deepCursor)
+                .retrieveSync("booksPaginated.edges")
+                .toEntityList(Edge.class));
+        return ShardedCatalog.merge(partial, (a, b) -> BookOrder.ID.compare(a.node(), b.node()), 20);
+    }
+
+    private <T> List<List<T>> scatter(Function<HttpSyncGraphQlClient, List<T>> query) throws InterruptedException {
+        List<Future<List<T>>> answers = new ArrayList<>(clients.size());
+        for (HttpSyncGraphQlClient client : clients) {
+            answers.add(executor.submit(() -> query.apply(client)));
+        }
+        List<List<T>> partial = new ArrayList<>(answers.size());
+        for (Future<List<T>> answer : answers) {
+            try {
+                partial.add(answer.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A node failed to answer", e.getCause());
+            }
+        }
+        return partial;
+    }
+
+}
@@ -1,6 +1,7 @@
 package books;
 
 import books.book.Book;
+import books.graphql.PersistedDocumentProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
@@ -9,9 +10,12 @@ import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.restclient.autoconfigure.RestClientAutoConfiguration;
 import org.springframework.context.annotation.Import;
+import org.springframework.graphql.client.ClientGraphQlResponse;
 import org.springframework.graphql.client.HttpSyncGraphQlClient;
 import org.springframework.web.client.RestClient;
 
+import java.util.Map;
+
 @Import(RestClientAutoConfiguration.class)
 public class ClientApp implements ApplicationRunner {
 
@@ -47,12 +51,29 @@ public class ClientApp implements ApplicationRunner {
                     }
                 }
                 """;
-        var book = client.document(document)
-                .variable("id", 1L)
-                .retrieveSync("book") // could use .retrieve() here for sync calls only catch is webflux needs to be on the classpath
+        var book = executePersisted(document, Map.of("id", 1L))
+                .field("book")
                 .toEntity(Book.class);
 
         assert book != null;
         log.info("Book Details: {}", book);
     }
+
+    // send only the SHA-256 of the document and fall back to the full text the first time the server hasn't seen it
+    private ClientGraphQlResponse executePersisted(String document, Map<String, Object> variables) {
+        Map<String, Object> persistedQuery = Map.of("version", 1, "sha256Hash", PersistedDocumentProvider.sha256(document));
+        ClientGraphQlResponse response = client.document("")
+                .variables(variables)
+                .extension("persistedQuery", persistedQuery)
+                .executeSync();
+
+        if (response.getErrors().stream().anyMatch(error -> "PersistedQueryNotFound".equals(error.getMessage()))) {
+            log.info("Client App: Query not persisted yet, sending full document");
+            response = client.document(document)
+                    .variables(variables)
+                    .extension("persistedQuery", persistedQuery)
+                    .executeSync();
+        }
+        return response;
+    }
 }
@@ -0,0 +1,56 @@
+package books.api;
+
+import books.book.Author;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// hand-written JSON values matching Jackson's record layout, used by the compiled BookProjection writers
+final class BookJsonWriter {
+
+    private BookJsonWriter() {
+    }
+
+    static void writeAuthor(Author author, Writer out) throws IOException {
+        if (author == null) {
+            out.write("null");
+            return;
+        }
+        out.write("{\"id\":");
+        writeNumber(author.id(), out);
+        out.write(",\"name\":");
+        writeString(author.name(), out);
+        out.write('}');
+    }
+
+    static void writeNumber(Number value, Writer out) throws IOException {
+        out.write(value == null ? "null" : value.toString());
+    }
+
+    static void writeString(String value, Writer out) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.write(value, start, i - start);
+                switch (c) {
+                    case '"' -> out.write("\\\"");
+                    case '\\' -> out.write("\\\\");
+                    case '\n' -> out.write("\\n");
+                    case '\r' -> out.write("\\r");
+                    case '\t' -> out.write("\\t");
+                    default -> out.write(String.format("\\u%04x", (int) c));
+                }
+                start = i + 1;
+            }
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+
+}
@@ -0,0 +1,166 @@
+package books.api;
+
+import books.book.Book;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A sparse fieldset such as {@code id,title,author.name} compiled into a fixed sequence of writers, so a
+ * projected book is emitted without reflection or per-request parsing. Field order in the request does not
+ * matter: output always follows the {@link Book} component order and equivalent requests share one instance.
+ */
+final class BookProjection {
+
+    static final BookProjection ALL = compile(EnumSet.of(Field.ID, Field.TITLE, Field.AUTHOR, Field.PUBLISHED_YEAR));
+
+    private static final int MAX_CACHED = 256;
+    private static final Map<String, BookProjection> byRequest = new ConcurrentHashMap<>();
+    private static final Map<Set<Field>, BookProjection> byFields = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final Part[] parts;
+
+    private BookProjection(String name, Part[] parts) {
+        this.name = name;
+        this.parts = parts;
+    }
+
+    static BookProjection of(String fields) {
+        BookProjection cached = byRequest.get(fields);
+        if (cached != null) {
+            return cached;
+        }
+        BookProjection projection = byFields.computeIfAbsent(parse(fields), BookProjection::compile);
+        if (byRequest.size() < MAX_CACHED) {
+            byRequest.putIfAbsent(fields, projection);
+        }
+        return projection;
+    }
+
+    // the selected fields in output order, e.g. "id,title,author.name"; equal projections have equal names
+    String name() {
+        return name;
+    }
+
+    void write(Book book, Writer out) throws IOException {
+        for (Part part : parts) {
+            part.write(book, out);
+        }
+    }
+
+    private static Set<Field> parse(String fields) {
+        EnumSet<Field> selected = EnumSet.noneOf(Field.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            Field field = Field.byName(trimmed);
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown field: " + trimmed);
+            }
+            selected.add(field);
+        }
+        if (selected.isEmpty()) {
+            throw new IllegalArgumentException("No fields selected: " + fields);
+        }
+        if (selected.contains(Field.AUTHOR)) {
+            selected.remove(Field.AUTHOR_ID);
+            selected.remove(Field.AUTHOR_NAME);
+        }
+        return selected;
+    }
+
+    private static BookProjection compile(Set<Field> fields) {
+        List<Part> parts = new ArrayList<>();
+        List<Part> authorParts = new ArrayList<>();
+        for (Field field : fields) {
+            if (field.nested) {
+                authorParts.add(field(authorParts.isEmpty() ? "{" : ",", field));
+            }
+            else {
+                if (!authorParts.isEmpty()) {
+                    parts.add(author(parts.isEmpty() ? "{" : ",", authorParts));
+                    authorParts = new ArrayList<>();
+                }
+                parts.add(field(parts.isEmpty() ? "{" : ",", field));
+            }
+        }
+        if (!authorParts.isEmpty()) {
+            parts.add(author(parts.isEmpty() ? "{" : ",", authorParts));
+        }
+        parts.add((book, out) -> out.write('}'));
+        String name = fields.stream().map(field -> field.path).collect(Collectors.joining(","));
+        return new BookProjection(name, parts.toArray(Part[]::new));
+    }
+
+    private static Part field(String separator, Field field) {
+        String prefix = separator + '"' + field.jsonName + "\":";
+        Part value = field.value;
+        return (book, out) -> {
+            out.write(prefix);
+            value.write(book, out);
+        };
+    }
+
+    // selected author sub-fields; a book without an author still gets "author":null
+    private static Part author(String separator, List<Part> selected) {
+        String prefix = separator + "\"author\":";
+        Part[] authorParts = selected.toArray(Part[]::new);
+        return (book, out) -> {
+            out.write(prefix);
+            if (book.author() == null) {
+                out.write("null");
+                return;
+            }
+            for (Part part : authorParts) {
+                part.write(book, out);
+            }
+            out.write('}');
+        };
+    }
+
+    @FunctionalInterface
+    private interface Part {
+        void write(Book book, Writer out) throws IOException;
+    }
+
+    private enum Field {
+        ID("id", "id", false, (book, out) -> BookJsonWriter.writeNumber(book.id(), out)),
+        TITLE("title", "title", false, (book, out) -> BookJsonWriter.writeString(book.title(), out)),
+        AUTHOR("author", "author", false, (book, out) -> BookJsonWriter.writeAuthor(book.author(), out)),
+        AUTHOR_ID("author.id", "id", true, (book, out) -> BookJsonWriter.writeNumber(book.author().id(), out)),
+        AUTHOR_NAME("author.name", "name", true, (book, out) -> BookJsonWriter.writeString(book.author().name(), out)),
+        PUBLISHED_YEAR("publishedYear", "publishedYear", false, (book, out) -> BookJsonWriter.writeNumber(book.publishedYear(), out));
+
+        private final String path;
+        private final String jsonName;
+        private final boolean nested;
+        private final Part value;
+
+        Field(String path, String jsonName, boolean nested, Part value) {
+            this.path = path;
+            this.jsonName = jsonName;
+            this.nested = nested;
+            this.value = value;
+        }
+
+        static Field byName(String path) {
+            for (Field field : values()) {
+                if (field.path.equalsIgnoreCase(path)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package books.api;
+
+import books.book.Book;
+import books.book.BookRepository;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Book lists pre-serialized once per repository data version, held in direct buffers per projection and content
+ * encoding. Every API version of {@code /api/books} writes the same bytes, so they share one entry. Repeated 200s
+ * are a single buffer write and a conditional request is answered from the version alone, without touching the
+ * list. Compressed encodings are built from the identity bytes on first use for each version.
+ * <p>
+ * Replaced buffers are only freed once the GC collects them, which a heap with little pressure may not do for a
+ * long time. The off-heap bytes still held by cached or replaced bodies are therefore counted against a budget:
+ * a body that does not fit is served from a heap buffer for that request and not cached. The budget is
+ * {@code books.api.response-cache.max-off-heap}.
+ */
+@Component
+public final class BookResponseCache {
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private record Key(BookProjection projection, Encoding encoding) {
+    }
+
+    private final BookRepository bookRepository;
+    private final long maxOffHeapBytes;
+    private final AtomicLong offHeapBytes = new AtomicLong();
+    private final Map<Key, Body> bodies = new ConcurrentHashMap<>();
+
+    public BookResponseCache(BookRepository bookRepository, ResponseCacheProperties properties) {
+        this.bookRepository = bookRepository;
+        this.maxOffHeapBytes = properties.maxOffHeap().toBytes();
+    }
+
+    // strong validator: the bytes for a given data version, projection and encoding never change
+    String etag(BookProjection projection, Encoding encoding) {
+        return etag(bookRepository.dataVersion(), projection, encoding);
+    }
+
+    Body body(BookProjection projection, Encoding encoding) {
+        Key key = new Key(projection, encoding);
+        Body body = bodies.get(key);
+        if (body != null && body.version == bookRepository.dataVersion()) {
+            return body;
+        }
+        if (encoding != Encoding.IDENTITY) {
+            Body identity = body(projection, Encoding.IDENTITY);
+            return store(key, identity.version, compress(identity.content, encoding));
+        }
+        // re-read until the version brackets the list, so the bytes are never tagged with an older version
+        long version;
+        List<Book> books;
+        do {
+            version = bookRepository.dataVersion();
+            books = bookRepository.findAll();
+        } while (version != bookRepository.dataVersion());
+        return store(key, version, serialize(projection, books));
+    }
+
+    // off-heap bytes held by cached bodies and by replaced ones the GC has not freed yet
+    long offHeapBytes() {
+        return offHeapBytes.get();
+    }
+
+    private Body store(Key key, long version, ByteArrayOutputStream bytes) {
+        ByteBuffer offHeap = allocate(bytes.size());
+        if (offHeap == null) {
+            return new Body(version, etag(version, key.projection, key.encoding),
+                    ByteBuffer.wrap(bytes.toByteArray()).asReadOnlyBuffer());
+        }
+        offHeap.put(bytes.toByteArray()).flip();
+        Body fresh = new Body(version, etag(version, key.projection, key.encoding), offHeap.asReadOnlyBuffer());
+        bodies.merge(key, fresh, (current, candidate) -> current.version >= candidate.version ? current : candidate);
+        return fresh;
+    }
+
+    // null when the budget is spent; the read-only views keep the buffer reachable, so it is released only
+    // after the last request writing it is done
+    private ByteBuffer allocate(int size) {
+        if (offHeapBytes.addAndGet(size) > maxOffHeapBytes) {
+            offHeapBytes.addAndGet(-size);
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        AtomicLong counter = offHeapBytes;
+        cleaner.register(buffer, () -> counter.addAndGet(-size));
+        return buffer;
+    }
+
+    private static String etag(long version, BookProjection projection, Encoding encoding) {
+        String fields = projection == BookProjection.ALL ? "" : "-" + projection.name();
+        String suffix = encoding == Encoding.IDENTITY ? "" : "-" + encoding.token;
+        return "\"" + version + fields + suffix + "\"";
+    }
+
+    private static ByteArrayOutputStream serialize(BookProjection projection, List<Book> books) {
+        return encode(out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write('[');
+            for (int i = 0; i < books.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                projection.write(books.get(i), writer);
+            }
+            writer.write(']');
+            writer.flush();
+        }, Math.max(64, books.size() * 96));
+    }
+
+    private static ByteArrayOutputStream compress(ByteBuffer identity, Encoding encoding) {
+        return encode(out -> {
+            try (OutputStream compressed = encoding == Encoding.GZIP
+                    ? new GZIPOutputStream(out, 8192)
+                    : new DeflaterOutputStream(out)) {
+                Channels.newChannel(compressed).write(identity.duplicate());
+            }
+        }, Math.max(64, identity.remaining() / 4));
+    }
+
+    private static ByteArrayOutputStream encode(Content content, int sizeHint) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(sizeHint);
+        try {
+            content.writeTo(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes;
+    }
+
+    @FunctionalInterface
+    private interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // bodies are handed out as read-only duplicates, so requests never copy or share positions
+    static final class Body {
+
+        private final long version;
+        private final String etag;
+        private final ByteBuffer content;
+
+        private Body(long version, String etag, ByteBuffer content) {
+            this.version = version;
+            this.etag = etag;
+            this.content = content;
+        }
+
+        String etag() {
+            return etag;
+        }
+
+        ByteBuffer content() {
+            return content.duplicate();
+        }
+    }
+
+    // brotli has no JDK encoder, so deflate is the second choice after gzip
+    enum Encoding {
+        GZIP("gzip"), DEFLATE("deflate"), IDENTITY("identity");
+
+        final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        // highest q-value wins, ties go to the declaration order; identity is acceptable unless refused outright.
+        // Empty when every encoding is refused, which the caller answers with 406 Not Acceptable.
+        static Optional<Encoding> negotiate(String acceptEncoding) {
+            if (acceptEncoding == null || acceptEncoding.isBlank()) {
+                return Optional.of(IDENTITY);
+            }
+            float[] quality = {-1, -1, -1};
+            float wildcard = -1;
+            for (String part : acceptEncoding.split(",")) {
+                String[] pieces = part.split(";");
+                String token = pieces[0].trim().toLowerCase(Locale.ROOT);
+                float q = quality(pieces);
+                if (token.equals("*")) {
+                    wildcard = q;
+                }
+                for (Encoding encoding : values()) {
+                    if (encoding.token.equals(token)) {
+                        quality[encoding.ordinal()] = q;
+                    }
+                }
+            }
+            Encoding best = null;
+            float bestQuality = 0;
+            for (Encoding encoding : values()) {
+                float q = quality[encoding.ordinal()];
+                if (q < 0) {
+                    q = wildcard >= 0 ? wildcard : encoding == IDENTITY ? 0.001f : 0;
+                }
+                if (q > bestQuality) {
+                    best = encoding;
+                    bestQuality = q;
+                }
+            }
+            return Optional.ofNullable(best);
+        }
+
+        private static float quality(String[] pieces) {
+            for (int i = 1; i < pieces.length; i++) {
+                String parameter = pieces[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+            return 1;
+        }
+    }
+
+}
@@ -1,42 +1,151 @@
 package books.api;
 
+import books.api.BookResponseCache.Encoding;
 import books.book.Book;
 import books.book.BookRepository;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
-import java.util.List;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 
 @RestController
 @RequestMapping("/api/books")
 public class BookRestController {
 
     private static final Logger log = LoggerFactory.getLogger(BookRestController.class);
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int STREAM_FLUSH_EVERY = 500;
     private final BookRepository bookRepository;
+    private final BookResponseCache responses;
 
-    public BookRestController(BookRepository bookRepository) {
+    public BookRestController(BookRepository bookRepository, BookResponseCache responses) {
         this.bookRepository = bookRepository;
+        this.responses = responses;
     }
 
     // :::::::::::::: CRUD METHODS ::::::::::::::
 
     @GetMapping("/")
-    public List<Book> books() {
-        return bookRepository.findAll();
+    public void books(WebRequest request, HttpServletResponse response) throws IOException {
+        cached(request, response);
+    }
+
+    // If-None-Match is answered from the repository data version alone; a 200 hands the cached off-heap buffer
+    // for the negotiated Content-Encoding straight to the container. Every API version writes the same bytes.
+    private void cached(WebRequest request, HttpServletResponse response) throws IOException {
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        Encoding encoding = Encoding.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE,
+                        "No acceptable content encoding"));
+        if (request.checkNotModified(responses.etag(BookProjection.ALL, encoding))) {
+            return;
+        }
+        BookResponseCache.Body body = responses.body(BookProjection.ALL, encoding);
+        ByteBuffer content = body.content();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setHeader(HttpHeaders.ETAG, body.etag());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        if (encoding != Encoding.IDENTITY) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding.token);
+        }
+        response.setContentLength(content.remaining());
+        response.getOutputStream().write(content);
+    }
+
+    // :::::::::::::: STREAMING (Accept: application/x-ndjson or X-API-Version: 3.0) ::::::::::::::
+
+    @GetMapping(path = "/", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> booksStream() {
+        return stream(BookProjection.ALL, true);
     }
 
+    @GetMapping(path = "/", version = "3.0")
+    public ResponseEntity<StreamingResponseBody> booksV3() {
+        log.info("Streaming all books using version {}", "3.0");
+        return stream(BookProjection.ALL, true);
+    }
+
+    // one book at a time straight from the catalog snapshot, merged lazily across shards; memory is bounded by
+    // the write buffer, a slow client blocks only this (virtual) thread and a disconnect surfaces as an
+    // IOException that ends the loop
+    private ResponseEntity<StreamingResponseBody> stream(BookProjection projection, boolean ndjson) {
+        Iterator<Book> books = bookRepository.iterateAll();
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+            if (!ndjson) {
+                writer.write('[');
+            }
+            int pending = 0;
+            boolean first = true;
+            while (books.hasNext()) {
+                if (!ndjson && !first) {
+                    writer.write(',');
+                }
+                first = false;
+                projection.write(books.next(), writer);
+                if (ndjson) {
+                    writer.write('\n');
+                }
+                if (++pending == STREAM_FLUSH_EVERY) {
+                    writer.flush();
+                    pending = 0;
+                }
+            }
+            if (!ndjson) {
+                writer.write(']');
+            }
+            writer.flush();
+        };
+        MediaType contentType = ndjson ? MediaType.parseMediaType(NDJSON_VALUE) : MediaType.APPLICATION_JSON;
+        return ResponseEntity.ok().contentType(contentType).body(body);
+    }
 
     // :::::::::::::: AVOID REST API EXPLOSION OF ENDPOINTS  ::::::::::::::
 
     // SERVICE A: Needs Endpoint that only returns Book title (No more over-fetching)
+    //   -> GET /api/books/?fields=title
 
     // SERVICE B: Needs a single endpoint to return book details and reviews (Multiple Request for multiple resources)
 
     // SERVICE C: Needs Book with Author Data but only these fields (API Explosion)
+    //   -> GET /api/books/?fields=id,title,author.name
+
+    @GetMapping(path = "/", params = "fields")
+    public ResponseEntity<StreamingResponseBody> booksWithFields(@RequestParam String fields) {
+        return stream(projection(fields), false);
+    }
+
+    @GetMapping(path = "/", params = "fields", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> booksStreamWithFields(@RequestParam String fields) {
+        return stream(projection(fields), true);
+    }
+
+    private static BookProjection projection(String fields) {
+        try {
+            return BookProjection.of(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
 
 
     // :::::::::::::: WE NEED TO VERSION OUR APIs (In the past I would have avoided this) ::::::::::::::
@@ -49,21 +158,21 @@ public class BookRestController {
      */
 
     @GetMapping(path = "/", version = "1.0")
-    public List<Book> booksV1() {
+    public void booksV1(WebRequest request, HttpServletResponse response) throws IOException {
         log.info("Getting all books using version {}", "1.0");
-        return bookRepository.findAll();
+        cached(request, response);
     }
 
     @GetMapping(path = "/", version = "1.2+")
-    public List<Book> booksV12() {
+    public void booksV12(WebRequest request, HttpServletResponse response) throws IOException {
         log.info("Getting all books using version {}", "1.2+");
-        return bookRepository.findAll();
+        cached(request, response);
     }
 
     @GetMapping(path = "/", version = "2.0")
-    public ResponseEntity<List<Book>> booksV2() {
+    public void booksV2(WebRequest request, HttpServletResponse response) throws IOException {
         log.info("Getting all books using version {}", "2.0");
-        return ResponseEntity.ok(bookRepository.findAll());
+        cached(request, response);
     }
 
 }
@@ -0,0 +1,15 @@
+package books.api;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+// maxOffHeap bounds the direct buffers held by cached and not yet collected /api/books bodies; 0 serves every body
+// from the heap without caching it
+@ConfigurationProperties("books.api.response-cache")
+public record ResponseCacheProperties(DataSize maxOffHeap) {
+
+    public ResponseCacheProperties {
+        maxOffHeap = maxOffHeap == null || maxOffHeap.isNegative() ? DataSize.ofMegabytes(256) : maxOffHeap;
+    }
+
+}
@@ -0,0 +1,248 @@
+package books.book;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Books stored column by column: primitive id, year and author-ordinal arrays plus references into a shared
+ * off-heap {@link TitleArena}. Rows are kept in id order, so an id lookup is a binary search. {@link Book}
+ * records are only created by {@link #book(int)}, i.e. when a caller actually reads a row.
+ * <p>
+ * Appends write into spare capacity of the arrays that the previous version shares: a version never reads past
+ * its own size, and only the newest version may append in place, so older snapshots stay valid.
+ */
+final class BookColumns {
+
+    private static final int NO_YEAR = Integer.MIN_VALUE;
+    private static final int NO_AUTHOR = -1;
+
+    private final TitleArena titles;
+    private final Author[] authors;
+    private final LongMap<Integer> authorOrdinals;
+    private final long[] ids;
+    private final int[] years;
+    private final int[] authorRefs;
+    private final long[] titleRefs;
+    private final int size;
+    // shared by every version built on the same arrays; holds the size of the one allowed to append in place
+    private final int[] tail;
+
+    private BookColumns(TitleArena titles, Author[] authors, LongMap<Integer> authorOrdinals, long[] ids,
+                        int[] years, int[] authorRefs, long[] titleRefs, int size, int[] tail) {
+        this.titles = titles;
+        this.authors = authors;
+        this.authorOrdinals = authorOrdinals;
+        this.ids = ids;
+        this.years = years;
+        this.authorRefs = authorRefs;
+        this.titleRefs = titleRefs;
+        this.size = size;
+        this.tail = tail;
+    }
+
+    // books must be in id order, which every loader and Catalog.of already guarantee
+    static BookColumns of(List<Author> authors, List<Book> books) {
+        List<Author> table = new ArrayList<>(authors);
+        LongMap<Integer> ordinals = new LongMap<>(table.size());
+        for (int i = 0; i < table.size(); i++) {
+            ordinals.put(table.get(i).id(), i);
+        }
+        for (Book book : books) {
+            if (book.author() != null && ordinals.get(book.author().id()) == null) {
+                ordinals.put(book.author().id(), table.size());
+                table.add(book.author());
+            }
+        }
+        Author[] authorTable = table.toArray(Author[]::new);
+        int n = books.size();
+        BookColumns columns = new BookColumns(new TitleArena(), authorTable, ordinals, new long[n], new int[n],
+                new int[n], new long[n], n, new int[]{n});
+        for (int row = 0; row < n; row++) {
+            Book book = books.get(row);
+            if (row > 0 && book.id() <= columns.ids[row - 1]) {
+                throw new IllegalArgumentException("Books must be in ascending id order");
+            }
+            columns.set(row, book, columns.ordinal(book.author()));
+        }
+        return columns;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long id(int row) {
+        return ids[row];
+    }
+
+    Book book(int row) {
+        int author = authorRefs[row];
+        int year = years[row];
+        return new Book(ids[row], titles.get(titleRefs[row]), author == NO_AUTHOR ? null : authors[author],
+                year == NO_YEAR ? null : year);
+    }
+
+    // row of the book with this id, or -1
+    int row(long id) {
+        int row = Arrays.binarySearch(ids, 0, size, id);
+        return row < 0 ? -1 : row;
+    }
+
+    // WRITES ====================================================================================================
+
+    // ids only grow, so new books are always the last rows
+    BookColumns with(List<Book> books) {
+        Author[] authorTable = authors;
+        LongMap<Integer> ordinals = authorOrdinals;
+        long last = size == 0 ? Long.MIN_VALUE : ids[size - 1];
+        for (Book book : books) {
+            if (book.id() <= last) {
+                throw new IllegalArgumentException("Book id " + book.id() + " is not above " + last);
+            }
+            last = book.id();
+            if (book.author() != null && ordinals.get(book.author().id()) == null) {
+                if (ordinals == authorOrdinals) {
+                    ordinals = authorOrdinals.copy();
+                }
+                authorTable = Arrays.copyOf(authorTable, authorTable.length + 1);
+                authorTable[authorTable.length - 1] = book.author();
+                ordinals.put(book.author().id(), authorTable.length - 1);
+            }
+        }
+        int n = size + books.size();
+        BookColumns next;
+        if (tail[0] == size && n <= ids.length) {
+            tail[0] = n;
+            next = new BookColumns(titles, authorTable, ordinals, ids, years, authorRefs, titleRefs, n, tail);
+        } else {
+            int capacity = Math.max(16, n + (n >> 1));
+            next = new BookColumns(titles, authorTable, ordinals, Arrays.copyOf(ids, capacity),
+                    Arrays.copyOf(years, capacity), Arrays.copyOf(authorRefs, capacity),
+                    Arrays.copyOf(titleRefs, capacity), n, new int[]{n});
+        }
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            next.set(size + i, book, next.ordinal(book.author()));
+        }
+        return next;
+    }
+
+    // removed rows must be ascending; titles of deleted rows stay in the arena until the next bulk load
+    BookColumns without(int[] removedRows) {
+        int n = size - removedRows.length;
+        long[] newIds = new long[n];
+        int[] newYears = new int[n];
+        int[] newAuthors = new int[n];
+        long[] newTitles = new long[n];
+        int to = 0;
+        int skip = 0;
+        for (int row = 0; row < size; row++) {
+            if (skip < removedRows.length && removedRows[skip] == row) {
+                skip++;
+                continue;
+            }
+            newIds[to] = ids[row];
+            newYears[to] = years[row];
+            newAuthors[to] = authorRefs[row];
+            newTitles[to] = titleRefs[row];
+            to++;
+        }
+        return new BookColumns(titles, authors, authorOrdinals, newIds, newYears, newAuthors, newTitles, n,
+                new int[]{n});
+    }
+
+    // new row of every old row once the (ascending) removed rows are gone, -1 for a removed one
+    static int[] remap(int size, int[] removedRows) {
+        int[] remap = new int[size];
+        int skip = 0;
+        for (int row = 0; row < size; row++) {
+            if (skip < removedRows.length && removedRows[skip] == row) {
+                skip++;
+                remap[row] = -1;
+            } else {
+                remap[row] = row - skip;
+            }
+        }
+        return remap;
+    }
+
+    static int[] remapRows(int[] rows, int[] remap) {
+        int[] result = new int[rows.length];
+        int j = 0;
+        for (int row : rows) {
+            if (remap[row] >= 0) {
+                result[j++] = remap[row];
+            }
+        }
+        return j == rows.length ? result : Arrays.copyOf(result, j);
+    }
+
+    private void set(int row, Book book, int author) {
+        ids[row] = book.id();
+        years[row] = book.publishedYear() == null ? NO_YEAR : book.publishedYear();
+        authorRefs[row] = author;
+        titleRefs[row] = titles.add(book.title());
+    }
+
+    private int ordinal(Author author) {
+        if (author == null) {
+            return NO_AUTHOR;
+        }
+        Integer ordinal = authorOrdinals.get(author.id());
+        if (ordinal == null) {
+            throw new IllegalArgumentException("Unknown author " + author.id());
+        }
+        return ordinal;
+    }
+
+    // VIEWS =====================================================================================================
+
+    List<Book> rows() {
+        return new Rows(this, null);
+    }
+
+    List<Book> rows(int[] rows) {
+        return new Rows(this, rows);
+    }
+
+    private static final class Rows extends AbstractList<Book> implements RandomAccess {
+
+        private final BookColumns columns;
+        private final int[] rows;
+
+        Rows(BookColumns columns, int[] rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override
+        public Book get(int index) {
+            return columns.book(rows == null ? Objects.checkIndex(index, columns.size) : rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? columns.size : rows.length;
+        }
+    }
+
+    // FOOTPRINT =================================================================================================
+
+    long heapBytes() {
+        long columnBytes = (long) ids.length * (Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES);
+        return columnBytes + (long) authors.length * Integer.BYTES + titles.tableBytes();
+    }
+
+    long offHeapBytes() {
+        return titles.allocatedBytes();
+    }
+
+    int distinctTitles() {
+        return titles.distinct();
+    }
+
+}
@@ -0,0 +1,143 @@
+package books.book;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque pagination cursors: one sort-order byte, the sort key of the book and its id as big-endian
+ * bytes with leading zeros dropped. Decoding yields a probe {@link Book} carrying just that key, so
+ * seeking is a plain binary search with the order's comparator. A cursor that pins a catalog version sets
+ * the high bit of the order byte and carries the version as eight bytes right after it.
+ */
+final class BookCursor {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final int PINNED = 0x80;
+
+    static final long UNPINNED = -1;
+
+    private BookCursor() {
+    }
+
+    static String encode(BookOrder order, Book book) {
+        return encode(order, book, UNPINNED);
+    }
+
+    static String encode(BookOrder order, Book book, long version) {
+        byte[] key = switch (order) {
+            case ID -> new byte[0];
+            case TITLE -> text(book.title());
+            case PUBLISHED_YEAR -> year(BookOrder.yearKey(book));
+            case AUTHOR_NAME -> text(BookOrder.authorNameKey(book));
+        };
+        long id = book.id();
+        int header = version == UNPINNED ? 1 : 1 + Long.BYTES;
+        int idLength = Math.max(1, Long.BYTES - Long.numberOfLeadingZeros(id) / Byte.SIZE);
+        byte[] bytes = new byte[header + key.length + idLength];
+        bytes[0] = (byte) (version == UNPINNED ? order.ordinal() : order.ordinal() | PINNED);
+        for (int i = 1; i < header; i++) {
+            bytes[i] = (byte) (version >>> (Long.BYTES - i) * Byte.SIZE);
+        }
+        System.arraycopy(key, 0, bytes, header, key.length);
+        for (int i = bytes.length - 1; i >= header + key.length; i--) {
+            bytes[i] = (byte) id;
+            id >>>= Byte.SIZE;
+        }
+        return ENCODER.encodeToString(bytes);
+    }
+
+    static Book decode(BookOrder order, String cursor) {
+        try {
+            byte[] bytes = DECODER.decode(cursor);
+            if (bytes.length < 2 || (bytes[0] & 0xFF & ~PINNED) != order.ordinal()) {
+                throw invalid(cursor);
+            }
+            int offset = (bytes[0] & PINNED) == 0 ? 1 : 1 + Long.BYTES;
+            String text = null;
+            int year = 0;
+            switch (order) {
+                case ID -> {
+                }
+                case TITLE, AUTHOR_NAME -> {
+                    int length = bytes[offset++] & 0xFF;
+                    if (length == 0xFF) {
+                        length = 0;
+                        for (int i = 0; i < Integer.BYTES; i++) {
+                            length = (length << Byte.SIZE) | (bytes[offset++] & 0xFF);
+                        }
+                    }
+                    text = new String(bytes, offset, length, StandardCharsets.UTF_8);
+                    offset += length;
+                }
+                case PUBLISHED_YEAR -> {
+                    for (int i = 0; i < Integer.BYTES; i++) {
+                        year = (year << Byte.SIZE) | (bytes[offset++] & 0xFF);
+                    }
+                }
+            }
+            int idLength = bytes.length - offset;
+            if (idLength < 1 || idLength > Long.BYTES) {
+                throw invalid(cursor);
+            }
+            long id = 0;
+            for (int i = offset; i < bytes.length; i++) {
+                id = (id << Byte.SIZE) | (bytes[i] & 0xFF);
+            }
+            return switch (order) {
+                case ID -> new Book(id, null, null, null);
+                case TITLE -> new Book(id, text, null, null);
+                case PUBLISHED_YEAR -> new Book(id, null, null, year);
+                case AUTHOR_NAME -> new Book(id, null, new Author(0L, text), null);
+            };
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    // the catalog version a pinned cursor was issued from, UNPINNED for any other cursor; a malformed cursor is
+    // left for decode to reject
+    static long version(String cursor) {
+        try {
+            byte[] bytes = DECODER.decode(cursor);
+            if (bytes.length <= Long.BYTES || (bytes[0] & PINNED) == 0) {
+                return UNPINNED;
+            }
+            long version = 0;
+            for (int i = 1; i <= Long.BYTES; i++) {
+                version = (version << Byte.SIZE) | (bytes[i] & 0xFF);
+            }
+            return version;
+        } catch (IllegalArgumentException e) {
+            return UNPINNED;
+        }
+    }
+
+    // the whole key, never a prefix: a truncated key would sort before its own book and page it again. Short keys
+    // use a single length byte; 0xFF escapes to a four-byte length
+    private static byte[] text(String value) {
+        byte[] utf8 = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        int length = utf8.length;
+        int header = length < 0xFF ? 1 : 1 + Integer.BYTES;
+        byte[] bytes = new byte[header + length];
+        if (header == 1) {
+            bytes[0] = (byte) length;
+        } else {
+            bytes[0] = (byte) 0xFF;
+            for (int i = 1; i < header; i++) {
+                bytes[i] = (byte) (length >>> (Integer.BYTES - i) * Byte.SIZE);
+            }
+        }
+        System.arraycopy(utf8, 0, bytes, header, length);
+        return bytes;
+    }
+
+    private static byte[] year(int year) {
+        return new byte[]{(byte) (year >>> 24), (byte) (year >>> 16), (byte) (year >>> 8), (byte) year};
+    }
+
+    private static IllegalArgumentException invalid(String cursor) {
+        return new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+
+}
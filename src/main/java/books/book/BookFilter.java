@@ -1,5 +1,42 @@
 package books.book;
 
+import java.util.Locale;
+
+// authorName is lower-cased once (but not trimmed, like the original case-insensitive match), so booksWithFilter,
+// paginated walks, subscriptions and cache invalidation all match the same authors
 public record BookFilter(String authorName, Integer publishedAfter) {
 
-}
\ No newline at end of file
+    public BookFilter {
+        authorName = authorName == null ? null : authorName.toLowerCase(Locale.ROOT);
+    }
+
+    public boolean isEmpty() {
+        return authorName == null && publishedAfter == null;
+    }
+
+    public boolean matches(Book book) {
+        if (publishedAfter != null &&
+                (book.publishedYear() == null || book.publishedYear() < publishedAfter)) {
+            return false;
+        }
+        if (authorName != null &&
+                (book.author() == null || !containsIgnoreCase(book.author().name(), authorName))) {
+            return false;
+        }
+        return true;
+    }
+
+    // regionMatches compares in place, so no lower-cased copies are allocated per book
+    static boolean containsIgnoreCase(String text, String part) {
+        if (text == null) {
+            return false;
+        }
+        for (int i = 0; i <= text.length() - part.length(); i++) {
+            if (text.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,74 @@
+package books.book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Evaluates a {@link BookFilter} from the catalog's indexes instead of testing every book. Each predicate
+ * is turned into a candidate range (author name index -> that author's books, or the tail of the year
+ * index), the smaller one drives the walk and the other is checked against it with primitive comparisons.
+ */
+final class BookFilterEngine {
+
+    private static final Comparator<Book> BY_ID = BookOrder.ID::compare;
+
+    private BookFilterEngine() {
+    }
+
+    // the live authors the name predicate matches, in ascending order; null when the filter has no name predicate.
+    // Authors are the same in every shard, so a sharded query resolves them once for all shards.
+    static long[] authorIds(ShardedCatalog catalog, TextIndex authorNames, BookFilter filter) {
+        if (filter.authorName() == null) {
+            return null;
+        }
+        String name = filter.authorName();
+        long[] ids = authorNames.matchingIds(name, id -> catalog.authorsById().get(id) != null);
+        if (authorNames.covers(catalog.version)) {
+            return ids;
+        }
+        return TextIndex.scanMatchingIds(catalog.authors(), Author::id, Author::name, name);
+    }
+
+    // the filter must not be empty; authorIds come from authorIds()
+    static List<Book> find(Catalog catalog, BookFilter filter, long[] authorIds) {
+        long authorCost = Long.MAX_VALUE;
+        if (authorIds != null) {
+            authorCost = 0;
+            for (long authorId : authorIds) {
+                authorCost += catalog.booksByAuthor(authorId).size();
+            }
+        }
+
+        List<Book> byYear = catalog.sorted(BookOrder.PUBLISHED_YEAR);
+        int yearFrom = 0;
+        long yearCost = byYear.size();
+        if (filter.publishedAfter() != null) {
+            yearFrom = BookOrder.PUBLISHED_YEAR.lowerBound(byYear, new Book(Long.MIN_VALUE, null, null, filter.publishedAfter()));
+            yearCost = byYear.size() - yearFrom;
+        }
+
+        List<Book> matches = new ArrayList<>();
+        if (authorIds != null && authorCost <= yearCost) {
+            for (long authorId : authorIds) {
+                for (Book book : catalog.booksByAuthor(authorId)) {
+                    if (filter.publishedAfter() == null || BookOrder.yearKey(book) >= filter.publishedAfter()) {
+                        matches.add(book);
+                    }
+                }
+            }
+        } else {
+            for (Book book : byYear.subList(yearFrom, byYear.size())) {
+                if (authorIds == null || (book.author() != null && Arrays.binarySearch(authorIds, book.author().id()) >= 0)) {
+                    matches.add(book);
+                }
+            }
+        }
+
+        // callers have always seen filtered books in catalog (id) order
+        matches.sort(BY_ID);
+        return matches;
+    }
+
+}
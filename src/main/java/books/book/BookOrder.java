@@ -0,0 +1,89 @@
+package books.book;
+
+import java.util.List;
+
+public enum BookOrder {
+
+    ID {
+        @Override
+        int compareKeys(Book a, Book b) {
+            return 0;
+        }
+    },
+    TITLE {
+        @Override
+        int compareKeys(Book a, Book b) {
+            return compareText(a.title(), b.title());
+        }
+    },
+    PUBLISHED_YEAR {
+        @Override
+        int compareKeys(Book a, Book b) {
+            return Integer.compare(yearKey(a), yearKey(b));
+        }
+    },
+    AUTHOR_NAME {
+        @Override
+        int compareKeys(Book a, Book b) {
+            return compareText(authorNameKey(a), authorNameKey(b));
+        }
+    };
+
+    abstract int compareKeys(Book a, Book b);
+
+    // the id breaks ties, so every order is total and a cursor identifies exactly one position
+    int compare(Book a, Book b) {
+        int result = compareKeys(a, b);
+        return result != 0 ? result : Long.compare(a.id(), b.id());
+    }
+
+    // index of the first book that sorts at or after the probe
+    int lowerBound(List<Book> books, Book probe) {
+        if (books instanceof PersistentList<Book> tree) {
+            return tree.lowerBound(book -> compare(book, probe) < 0);
+        }
+        int low = 0;
+        int high = books.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(books.get(mid), probe) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // index of the first book that sorts strictly after the probe
+    int upperBound(List<Book> books, Book probe) {
+        if (books instanceof PersistentList<Book> tree) {
+            return tree.lowerBound(book -> compare(book, probe) <= 0);
+        }
+        int low = 0;
+        int high = books.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(books.get(mid), probe) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static int yearKey(Book book) {
+        return book.publishedYear() == null ? Integer.MIN_VALUE : book.publishedYear();
+    }
+
+    static String authorNameKey(Book book) {
+        return book.author() == null ? null : book.author().name();
+    }
+
+    // compareToIgnoreCase avoids allocating lower-cased copies on every probe
+    private static int compareText(String a, String b) {
+        return (a == null ? "" : a).compareToIgnoreCase(b == null ? "" : b);
+    }
+
+}
@@ -0,0 +1,172 @@
+package books.book;
+
+import books.pagination.BookConnection;
+import books.pagination.BookEdge;
+import books.pagination.PageInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keyset pagination over one of the catalog's sorted indexes. Cursors are seeked with a binary search
+ * and the filter is evaluated while walking from that position, so a page costs O(log n + page size)
+ * plus whatever the filter has to skip, never a pass over the whole catalog. Cursors name the catalog
+ * version they were issued from when the page is pinned, so the next page can be read from that same version.
+ * <p>
+ * A keyset cursor is a position in every shard at once, so a sharded catalog pages each shard with the same
+ * cursor and {@link #merge} keeps the first (or last) edges of the combined pages.
+ */
+final class BookPaginator {
+
+    private BookPaginator() {
+    }
+
+    static BookConnection page(List<Book> index, BookOrder order, BookFilter filter,
+                               Integer first, String after, Integer last, String before) {
+        return page(index, order, filter, first, after, last, before, BookCursor.UNPINNED);
+    }
+
+    // version is stamped into every cursor of the page, or BookCursor.UNPINNED for plain keyset cursors
+    static BookConnection page(List<Book> index, BookOrder order, BookFilter filter,
+                               Integer first, String after, Integer last, String before, long version) {
+        int low = after == null ? 0 : order.upperBound(index, BookCursor.decode(order, after));
+        int high = before == null ? index.size() : order.lowerBound(index, BookCursor.decode(order, before));
+
+        // a year range on the year index is a seek, not a filter
+        if (filter != null && filter.publishedAfter() != null && order == BookOrder.PUBLISHED_YEAR) {
+            low = Math.max(low, order.lowerBound(index, new Book(Long.MIN_VALUE, null, null, filter.publishedAfter())));
+        }
+        high = Math.max(low, high);
+
+        if (filter == null || filter.isEmpty()) {
+            return slice(index, order, low, high, first, last, version);
+        }
+        if (last != null && first == null) {
+            return walkBackward(index, order, filter, low, high, last, before != null && high < index.size(), version);
+        }
+        return walkForward(index, order, filter, low, high, first, last,
+                after != null, before != null && high < index.size(), version);
+    }
+
+    private static BookConnection slice(List<Book> index, BookOrder order, int startIndex, int endIndex,
+                                        Integer first, Integer last, long version) {
+        // Apply pagination limits
+        if (first != null) {
+            if (first <= 0) {
+                endIndex = startIndex; // Return empty result for first: 0 or negative
+            } else {
+                endIndex = Math.min(startIndex + first, endIndex);
+            }
+        }
+
+        if (last != null) {
+            if (last <= 0) {
+                startIndex = endIndex; // Return empty result for last: 0 or negative
+            } else {
+                startIndex = Math.max(endIndex - last, startIndex);
+            }
+        }
+
+        return connection(index.subList(startIndex, endIndex), order,
+                endIndex < index.size(), startIndex > 0, version);
+    }
+
+    // with a filter, hasPreviousPage/hasNextPage on the side we did not walk are reported the way the
+    // Relay spec allows when they cannot be computed cheaply: true only if a cursor bounds that side
+    private static BookConnection walkForward(List<Book> index, BookOrder order, BookFilter filter, int low, int high,
+                                              Integer first, Integer last, boolean hasPrevious, boolean hasMoreAfterRange,
+                                              long version) {
+        int limit = first == null ? Integer.MAX_VALUE : Math.max(0, first);
+        List<Book> matches = new ArrayList<>(Math.min(limit, 64));
+        int i = low;
+        for (Book book : index.subList(low, high)) {
+            if (matches.size() == limit) {
+                break;
+            }
+            if (filter.matches(book)) {
+                matches.add(book);
+            }
+            i++;
+        }
+        boolean hasNext = hasMoreAfterRange || (matches.size() == limit && hasMatch(index, filter, i, high));
+
+        if (last != null) {
+            int keep = Math.max(0, Math.min(last, matches.size()));
+            if (keep < matches.size()) {
+                hasPrevious = true;
+                matches = matches.subList(matches.size() - keep, matches.size());
+            }
+        }
+        return connection(matches, order, hasNext, hasPrevious, version);
+    }
+
+    private static BookConnection walkBackward(List<Book> index, BookOrder order, BookFilter filter, int low, int high,
+                                               int last, boolean hasNext, long version) {
+        int limit = Math.max(0, last);
+        Book[] matches = new Book[limit];
+        int count = 0;
+        int i = high - 1;
+        for (; i >= low && count < limit; i--) {
+            Book book = index.get(i);
+            if (filter.matches(book)) {
+                matches[limit - 1 - count++] = book;
+            }
+        }
+        boolean hasPrevious = count == limit && hasMatch(index, filter, low, i + 1);
+        return connection(Arrays.asList(matches).subList(limit - count, limit), order, hasNext, hasPrevious, version);
+    }
+
+    private static boolean hasMatch(List<Book> index, BookFilter filter, int from, int to) {
+        for (Book book : index.subList(from, to)) {
+            if (filter.matches(book)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the pages every shard returned for one request; when first is given the shards were asked for first only,
+    // because first-then-last has to be applied to the merged edges, not to each shard's
+    static BookConnection merge(List<BookConnection> pages, BookOrder order, Integer first, Integer last) {
+        List<List<BookEdge>> edges = new ArrayList<>(pages.size());
+        int total = 0;
+        boolean hasNext = false;
+        boolean hasPrevious = false;
+        for (BookConnection page : pages) {
+            edges.add(page.edges());
+            total += page.edges().size();
+            hasNext |= page.pageInfo().hasNextPage();
+            hasPrevious |= page.pageInfo().hasPreviousPage();
+        }
+        Comparator<BookEdge> byNode = (a, b) -> order.compare(a.node(), b.node());
+        List<BookEdge> merged = ShardedCatalog.merge(edges, byNode, first == null ? Integer.MAX_VALUE : Math.max(0, first));
+        hasNext |= merged.size() < total;
+        if (last != null) {
+            int keep = Math.max(0, Math.min(last, merged.size()));
+            if (keep < merged.size()) {
+                hasPrevious = true;
+                merged = merged.subList(merged.size() - keep, merged.size());
+            }
+        }
+
+        String startCursor = merged.isEmpty() ? null : merged.get(0).cursor();
+        String endCursor = merged.isEmpty() ? null : merged.get(merged.size() - 1).cursor();
+        return new BookConnection(merged, new PageInfo(hasNext, hasPrevious, startCursor, endCursor));
+    }
+
+    private static BookConnection connection(List<Book> page, BookOrder order, boolean hasNextPage, boolean hasPreviousPage,
+                                             long version) {
+        List<BookEdge> edges = new ArrayList<>(page.size());
+        for (Book book : page) {
+            edges.add(new BookEdge(BookCursor.encode(order, book, version), book));
+        }
+
+        String startCursor = edges.isEmpty() ? null : edges.get(0).cursor();
+        String endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).cursor();
+
+        return new BookConnection(edges, new PageInfo(hasNextPage, hasPreviousPage, startCursor, endCursor));
+    }
+
+}
@@ -1,165 +1,497 @@
 package books.book;
 
 import books.pagination.BookConnection;
-import books.pagination.BookEdge;
-import books.pagination.PageInfo;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Repository
 public class BookRepository {
 
-    private final List<Book> books = new ArrayList<>();
-    private final List<Author> authors = new ArrayList<>();
+    private static final Logger log = LoggerFactory.getLogger(BookRepository.class);
+    private final CatalogDataProperties data;
+    private final Object writeLock = new Object();
     private final AtomicLong bookIdCounter = new AtomicLong(0);
     private final AtomicLong authorIdCounter = new AtomicLong(0);
+    // one title index per shard; authors are in every shard, so their name index is shared
+    private final TextIndex[] bookTitles;
+    private final TextIndex authorNames = new TextIndex();
+    private final List<Consumer<CatalogChange>> changeListeners = new CopyOnWriteArrayList<>();
+    // runs the per-shard parts of sharded queries; null with a single shard
+    private final ExecutorService shardExecutor;
+    private volatile ShardedCatalog catalog;
+    private volatile boolean replica;
+    private CatalogStore store;
+
+    public BookRepository() {
+        this(CatalogDataProperties.SEED);
+    }
+
+    @Autowired
+    public BookRepository(CatalogDataProperties data) {
+        this.data = data;
+        this.catalog = ShardedCatalog.empty(data.shards());
+        this.bookTitles = new TextIndex[data.shards()];
+        for (int i = 0; i < bookTitles.length; i++) {
+            bookTitles[i] = new TextIndex();
+        }
+        this.shardExecutor = data.shards() == 1 ? null
+                : Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("catalog-shard-", 0).factory());
+    }
 
     // BOOKS ====================================================================================================
 
     public List<Book> findAll() {
-        return books;
+        return snapshot().findAll();
+    }
+
+    public Iterator<Book> iterateAll() {
+        return snapshot().iterateAll();
     }
 
     public Book findById(Long id) {
-        return books.stream()
-                .filter(book -> book.id().equals(id))
-                .findFirst()
-                .orElse(null);
+        return snapshot().findById(id);
     }
 
-    public List<Book> findBooksByAuthorIds(List<Long> authorIds) {
-        return books.stream()
-                .filter(book -> authorIds.contains(book.author().id()))
-                .collect(Collectors.toList());
+    public List<Book> findBooks(BookFilter filter) {
+        return snapshot().findBooks(filter);
+    }
+
+    public List<Book> findBooksByAuthorIds(Collection<Long> authorIds) {
+        return snapshot().findBooksByAuthorIds(authorIds);
     }
 
     public Book createBook(String title, Author author, Integer publishedYear) {
-        Long id = bookIdCounter.incrementAndGet();
-        Book book = new Book(id, title, author, publishedYear);
-        books.add(book);
+        checkWritable();
+        Book book;
+        long lsn;
+        synchronized (writeLock) {
+            Long id = bookIdCounter.incrementAndGet();
+            book = new Book(id, title, author, publishedYear);
+            ShardedCatalog next = catalog.withBooks(List.of(book));
+            bookTitles[next.shardOf(book)].add(id, title);
+            catalog = next;
+            lsn = commit(CatalogChange.bookAdded(book));
+        }
+        awaitDurable(lsn);
         return book;
     }
 
     public boolean deleteBookById(Long id) {
-        return books.removeIf(book -> book.id().equals(id));
+        if (id == null) {
+            return false;
+        }
+        checkWritable();
+        long lsn;
+        synchronized (writeLock) {
+            Book book = catalog.book(id);
+            if (book == null) {
+                return false;
+            }
+            ShardedCatalog next = catalog.withoutBooks(List.of(book));
+            bookTitles[next.shardOf(book)].remove(id, next.version);
+            catalog = next;
+            lsn = commit(CatalogChange.bookDeleted(book));
+        }
+        awaitDurable(lsn);
+        return true;
+    }
+
+    public List<Book> createBooks(List<CreateBookInput> inputs) {
+        return apply(inputs, List.of()).addedBooks();
+    }
+
+    // the books that existed, in the order of their ids; unknown and repeated ids are skipped
+    public List<Book> deleteBooks(Collection<Long> ids) {
+        return apply(List.of(), ids).deletedBooks();
+    }
+
+    // one write for the whole batch: authors are resolved once per distinct name, ids are taken as one range, and
+    // the catalog, the title index, the change listeners and the log each see a single update. The returned change
+    // lists the added books in input order and the deleted books in id order.
+    public CatalogChange apply(List<CreateBookInput> inputs, Collection<Long> deleteIds) {
+        checkWritable();
+        List<Book> added = new ArrayList<>(inputs.size());
+        List<Book> deleted = new ArrayList<>();
+        CatalogChange change;
+        long lsn;
+        synchronized (writeLock) {
+            ShardedCatalog snapshot = catalog;
+            LongMap<Book> seen = new LongMap<>(deleteIds.size());
+            for (Long id : deleteIds) {
+                Book book = id == null || seen.get(id) != null ? null : snapshot.book(id);
+                if (book != null) {
+                    seen.put(id, book);
+                    deleted.add(book);
+                }
+            }
+
+            Map<String, Author> authorsByName = new HashMap<>();
+            long firstId = bookIdCounter.getAndAdd(inputs.size()) + 1;
+            for (int i = 0; i < inputs.size(); i++) {
+                CreateBookInput input = inputs.get(i);
+                String nameKey = input.authorName() == null ? null : Catalog.nameKey(input.authorName());
+                Author author = authorsByName.get(nameKey);
+                if (author == null && !authorsByName.containsKey(nameKey)) {
+                    author = nameKey == null ? null : snapshot.authorByName(nameKey);
+                    authorsByName.put(nameKey, author);
+                }
+                added.add(new Book(firstId + i, input.title(), author, input.publishedYear()));
+            }
+
+            change = new CatalogChange(List.copyOf(added), List.copyOf(deleted), List.of());
+            if (!change.touchesBooks()) {
+                return change;
+            }
+            ShardedCatalog next = snapshot.withoutBooks(deleted).withBooks(added);
+            indexTitles(next, deleted, added);
+            catalog = next;
+            lsn = commit(change);
+        }
+        awaitDurable(lsn);
+        return change;
+    }
+
+    // called under the write lock with the books a write removed and added, before the next version is published:
+    // readers of the current version ignore the added titles and scan instead of missing the removed ones
+    private void indexTitles(ShardedCatalog next, List<Book> deleted, List<Book> added) {
+        List<List<Book>> deletedByShard = next.partition(deleted);
+        List<List<Book>> addedByShard = next.partition(added);
+        for (int i = 0; i < bookTitles.length; i++) {
+            bookTitles[i].removeAll(deletedByShard.get(i).stream().mapToLong(Book::id).toArray(), next.version);
+            bookTitles[i].addAll(addedByShard.get(i), Book::id, Book::title);
+        }
     }
 
     // AUTHORS ===================================================================================================
 
     public List<Author> findAllAuthors() {
-        return authors;
+        return snapshot().findAllAuthors();
     }
 
     public Author findAuthorById(Long id) {
-        return authors.stream()
-                .filter(author -> author.id().equals(id))
-                .findFirst()
-                .orElse(null);
+        return snapshot().findAuthorById(id);
     }
 
     public Author findAuthorByName(String name) {
-        return authors.stream()
-                .filter( a -> a.name().equalsIgnoreCase(name))
-                .findFirst()
-                .orElse(null);
+        return snapshot().findAuthorByName(name);
     }
 
     public Author createAuthor(String name) {
-        Long id = authorIdCounter.incrementAndGet();
-        Author author = new Author(id, name);
-        authors.add(author);
+        checkWritable();
+        Author author;
+        long lsn;
+        synchronized (writeLock) {
+            Long id = authorIdCounter.incrementAndGet();
+            author = new Author(id, name);
+            ShardedCatalog next = catalog.withAuthor(author);
+            authorNames.add(id, name);
+            catalog = next;
+            lsn = commit(CatalogChange.authorAdded(author));
+        }
+        awaitDurable(lsn);
         return author;
     }
 
+    // BULK LOAD =================================================================================================
 
-    // PAGINATION ================================================================================================
-
-    public BookConnection findBooksPaginated(Integer first, String after, Integer last, String before) {
-        List<Book> allBooks = new ArrayList<>(books);
-
-        // Handle cursor-based filtering
-        int startIndex = 0;
-        int endIndex = allBooks.size();
-
-        if (after != null) {
-            Long afterId = decodeCursor(after);
-            for (int i = 0; i < allBooks.size(); i++) {
-                if (allBooks.get(i).id().equals(afterId)) {
-                    startIndex = i + 1;
-                    break;
-                }
+    // replaces the whole catalog in one step instead of one copy-on-write per createBook/createAuthor call. The
+    // loaded catalog is in no log record, so with a store it is on disk before the write lock is released
+    void load(List<Author> authors, List<Book> books) {
+        synchronized (writeLock) {
+            replace(authors, books);
+            if (store != null) {
+                store.snapshotNow(catalog, bookIdCounter.get(), authorIdCounter.get());
             }
         }
+    }
 
-        if (before != null) {
-            Long beforeId = decodeCursor(before);
-            for (int i = 0; i < allBooks.size(); i++) {
-                if (allBooks.get(i).id().equals(beforeId)) {
-                    endIndex = i;
-                    break;
-                }
+    private void replace(List<Author> authors, List<Book> books) {
+        ShardedCatalog previous = catalog;
+        ShardedCatalog next = ShardedCatalog.of(data.shards(), data.storage(), authors, books, previous.version + 1);
+        authorNames.rebuild(authors, Author::id, Author::name, next.version);
+        List<List<Book>> booksByShard = next.partition(books);
+        for (int i = 0; i < bookTitles.length; i++) {
+            bookTitles[i].rebuild(booksByShard.get(i), Book::id, Book::title, next.version);
+        }
+        catalog = next;
+        bookIdCounter.set(books.stream().mapToLong(Book::id).max().orElse(0));
+        authorIdCounter.set(authors.stream().mapToLong(Author::id).max().orElse(0));
+        if (!previous.books().isEmpty() || !previous.authors().isEmpty()) {
+            CatalogChange change = difference(previous, next);
+            if (change.touchesBooks() || change.touchesAuthors()) {
+                publish(change);
             }
         }
+    }
 
-        // Apply pagination limits
-        if (first != null) {
-            if (first <= 0) {
-                endIndex = startIndex; // Return empty result for first: 0 or negative
-            } else {
-                endIndex = Math.min(startIndex + first, endIndex);
+    // what a replacement actually changed, so a replica's snapshot catch-up reports only the books it missed
+    // rather than every book as deleted and added again. Both catalogs are walked once in id order.
+    private static CatalogChange difference(ShardedCatalog previous, ShardedCatalog next) {
+        List<Book> added = new ArrayList<>();
+        List<Book> deleted = new ArrayList<>();
+        Iterator<Book> before = previous.booksIterator();
+        Iterator<Book> after = next.booksIterator();
+        Book old = before.hasNext() ? before.next() : null;
+        Book current = after.hasNext() ? after.next() : null;
+        while (old != null || current != null) {
+            int order = old == null ? 1 : current == null ? -1 : Long.compare(old.id(), current.id());
+            if (order < 0) {
+                deleted.add(old);
+            } else if (order > 0) {
+                added.add(current);
+            } else if (!old.equals(current)) {
+                deleted.add(old);
+                added.add(current);
+            }
+            if (order <= 0) {
+                old = before.hasNext() ? before.next() : null;
+            }
+            if (order >= 0) {
+                current = after.hasNext() ? after.next() : null;
             }
         }
+        List<Author> authors = next.authors().stream()
+                .filter(author -> !author.equals(previous.authorsById().get(author.id())))
+                .toList();
+        return new CatalogChange(List.copyOf(added), List.copyOf(deleted), authors);
+    }
 
-        if (last != null) {
-            if (last <= 0) {
-                startIndex = endIndex; // Return empty result for last: 0 or negative
-            } else {
-                startIndex = Math.max(endIndex - last, startIndex);
+    // REPLICATION ===============================================================================================
+
+    // from now on the catalog only changes through load() and replicate(), driven by the primary
+    void followPrimary() {
+        replica = true;
+    }
+
+    // a node of a partitioned deployment is read-only too: its id counters only know the books it owns, so two
+    // nodes would hand out the same ids, and a book could land on a node its author does not hash to
+    private void checkWritable() {
+        if (replica) {
+            throw new IllegalStateException("This instance is a read replica; send writes to the primary");
+        }
+        if (data.node().count() > 1) {
+            throw new IllegalStateException("This instance is node " + data.node().index() + " of "
+                    + data.node().count() + " of a partitioned catalog, which is read-only");
+        }
+    }
+
+    // one change from the primary's log, as one write. Books and authors keep the primary's ids. The replica holds
+    // exactly the primary's catalog before the change, so a change that does not fit means the two have diverged
+    // and an IllegalStateException tells the follower to start over from a snapshot.
+    CatalogChange replicate(List<Author> authors, List<Book> books, long[] deletedIds) {
+        List<Book> added = new ArrayList<>(books);
+        List<Book> deleted = new ArrayList<>(deletedIds.length);
+        added.sort(BookOrder.ID::compare);
+        CatalogChange change;
+        long lsn;
+        synchronized (writeLock) {
+            ShardedCatalog next = catalog;
+            for (Author author : authors) {
+                if (next.authorsById().get(author.id()) != null) {
+                    throw new IllegalStateException("Replicated author " + author.id() + " already exists");
+                }
+                next = next.withAuthor(author);
+            }
+            for (long id : deletedIds) {
+                Book book = next.book(id);
+                if (book == null) {
+                    throw new IllegalStateException("Replicated delete of book " + id + " that does not exist");
+                }
+                deleted.add(book);
+            }
+            if (!added.isEmpty() && added.getFirst().id() <= bookIdCounter.get()) {
+                throw new IllegalStateException("Replicated book " + added.getFirst().id() + " is not above book "
+                        + bookIdCounter.get());
             }
+
+            next = next.withoutBooks(deleted).withBooks(added);
+            for (Author author : authors) {
+                authorNames.add(author.id(), author.name());
+                authorIdCounter.accumulateAndGet(author.id(), Math::max);
+            }
+            indexTitles(next, deleted, added);
+            catalog = next;
+            if (!added.isEmpty()) {
+                bookIdCounter.set(added.getLast().id());
+            }
+            change = new CatalogChange(List.copyOf(added), List.copyOf(deleted), List.copyOf(authors));
+            lsn = commit(change);
         }
+        awaitDurable(lsn);
+        return change;
+    }
 
-        // Get the page slice
-        List<Book> pageBooks = allBooks.subList(Math.max(0, startIndex), Math.min(allBooks.size(), endIndex));
+    // SNAPSHOTS =================================================================================================
 
-        // Create edges
-        List<BookEdge> edges = pageBooks.stream()
-                .map(book -> new BookEdge(encodeCursor(book.id()), book))
-                .collect(Collectors.toList());
+    // the current version, for reads that must agree with each other, e.g. every resolver of one GraphQL query
+    public CatalogSnapshot snapshot() {
+        return new CatalogSnapshot(catalog, bookTitles, authorNames, shardExecutor);
+    }
 
-        // Calculate page info
-        boolean hasNextPage = endIndex < allBooks.size();
-        boolean hasPreviousPage = startIndex > 0;
-        String startCursor = edges.isEmpty() ? null : edges.get(0).cursor();
-        String endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).cursor();
+    // the current version together with state a change listener keeps, read with no write in between; the
+    // function runs under the write lock, so it must be quick and must not write
+    <T> T snapshot(Function<CatalogSnapshot, T> withListenerState) {
+        synchronized (writeLock) {
+            return withListenerState.apply(snapshot());
+        }
+    }
 
-        PageInfo pageInfo = new PageInfo(hasNextPage, hasPreviousPage, startCursor, endCursor);
+    // true while no write has been published since the snapshot was taken
+    public boolean isCurrent(CatalogSnapshot snapshot) {
+        return snapshot.catalog == catalog;
+    }
+
+    // CHANGES ===================================================================================================
 
-        return new BookConnection(edges, pageInfo);
+    // monotonically increasing, bumped by every write; equal versions always mean identical books and authors
+    public long dataVersion() {
+        return catalog.version;
     }
 
-    private String encodeCursor(Long id) {
-        return Base64.getEncoder().encodeToString(id.toString().getBytes());
+    // estimated memory held by the current books, for comparing the heap and columnar storages
+    public CatalogFootprint footprint() {
+        return catalog.footprint();
     }
 
-    private Long decodeCursor(String cursor) {
-        try {
-            byte[] decodedBytes = Base64.getDecoder().decode(cursor);
-            return Long.parseLong(new String(decodedBytes));
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    public void addChangeListener(Consumer<CatalogChange> listener) {
+        changeListeners.add(listener);
+    }
+
+    // called under the write lock once the new catalog is visible; the log record is only queued here so the
+    // fsync happens outside the lock and is shared with every writer that commits before it runs. The record is
+    // queued before the listeners run, so a write readers can see always has one.
+    private long commit(CatalogChange change) {
+        long lsn = 0;
+        if (store != null) {
+            lsn = store.append(change);
+            if (store.snapshotDue()) {
+                store.snapshot(catalog, bookIdCounter.get(), authorIdCounter.get());
+            }
         }
+        publish(change);
+        return lsn;
+    }
+
+    private void awaitDurable(long lsn) {
+        if (store != null) {
+            store.awaitDurable(lsn);
+        }
+    }
+
+    // called under the write lock once the new catalog is visible, so listeners see changes in commit order. The
+    // write has happened by now, so a failing listener is logged and cannot fail it or skip the listeners after it
+    private void publish(CatalogChange change) {
+        for (Consumer<CatalogChange> listener : changeListeners) {
+            try {
+                listener.accept(change);
+            } catch (RuntimeException e) {
+                log.error("Change listener {} failed on catalog version {}", listener, catalog.version, e);
+            }
+        }
+    }
+
+    // SEARCH ====================================================================================================
+
+    public List<Object> search(String text, int limit) {
+        return snapshot().search(text, limit);
+    }
+
+
+    // PAGINATION ================================================================================================
+
+    public BookConnection findBooksPaginated(Integer first, String after, Integer last, String before) {
+        return findBooksPaginated(first, after, last, before, BookOrder.ID, null);
+    }
+
+    public BookConnection findBooksPaginated(Integer first, String after, Integer last, String before,
+                                             BookOrder order, BookFilter filter) {
+        return snapshot().findBooksPaginated(first, after, last, before, order, filter);
     }
 
     // DATA ======================================================================================================
 
     @PostConstruct
     public void init() {
+        if (data.durable().enabled()) {
+            if (openStore()) {
+                return;
+            }
+        }
+        if (data.source() == CatalogDataProperties.Source.SYNTHETIC) {
+            loadSynthetic(data.synthetic());
+        } else {
+            loadSeed();
+        }
+    }
+
+    // true when the catalog was recovered from disk; otherwise the store is empty and the seed or synthetic load
+    // that follows is written as its first snapshot before init() returns
+    private boolean openStore() {
+        try {
+            store = CatalogStore.open(Path.of(data.durable().directory()), data.durable().snapshotEvery());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open catalog store in " + data.durable().directory(), e);
+        }
+        CatalogStore.Recovered recovered = store.recovered();
+        if (recovered == null) {
+            return false;
+        }
+        synchronized (writeLock) {
+            replace(recovered.authors(), recovered.books());
+            // deleted books keep their ids retired, so the counters come from the store rather than the survivors
+            bookIdCounter.set(Math.max(bookIdCounter.get(), recovered.bookIdCounter()));
+            authorIdCounter.set(Math.max(authorIdCounter.get(), recovered.authorIdCounter()));
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+        if (shardExecutor != null) {
+            shardExecutor.shutdown();
+        }
+    }
+
+    public void loadSynthetic(CatalogDataProperties.Synthetic spec) {
+        long start = System.nanoTime();
+        CatalogGenerator.Dataset dataset = CatalogGenerator.generate(spec);
+        load(dataset.authors(), owned(dataset.books()));
+        CatalogFootprint footprint = footprint();
+        log.info("Loaded synthetic catalog of {} authors and {} books in {} ms ({} storage, ~{} MiB heap, {} MiB off-heap)",
+                dataset.authors().size(), dataset.books().size(), (System.nanoTime() - start) / 1_000_000,
+                footprint.storage(), footprint.heapBytes() >> 20, footprint.offHeapBytes() >> 20);
+    }
+
+    // a node of a partitioned deployment keeps only the generated or seed books it owns
+    private List<Book> owned(List<Book> books) {
+        CatalogDataProperties.Node node = data.node();
+        return node.count() == 1 ? books : books.stream().filter(node::owns).toList();
+    }
+
+    private void loadSeed() {
 
         // Create Me and Nate
         Author nateSchutta = new Author(authorIdCounter.incrementAndGet(), "Nate Schutta");
@@ -199,8 +531,7 @@ public class BookRepository {
         Author robertMartin = new Author(authorIdCounter.incrementAndGet(), "Robert C. Martin");
         Author andrewHunt = new Author(authorIdCounter.incrementAndGet(), "Andrew Hunt");
 
-        // Add all authors to the collection
-        authors.addAll(List.of(
+        List<Author> authors = List.of(
                 danVega, nateSchutta,
                 joshuaBloch, herbertSchildt, raoulgabrielUrma, brianGoetz,
                 craigWalls, gregTurnquist, markHeckler, thomasVitale, joshLong,
@@ -208,10 +539,10 @@ public class BookRepository {
                 rodJohnson, martinFowler, nealFord,
                 kenKousen, dmitryJemerov, venkatSubramaniam,
                 petarTahchiev, robertMartin, andrewHunt
-        ));
+        );
 
         // Create books
-        books.addAll(List.of(
+        List<Book> books = List.of(
                 // Core Java
                 new Book(bookIdCounter.incrementAndGet(), "Effective Java", joshuaBloch, 2017),
                 new Book(bookIdCounter.incrementAndGet(), "Java: The Complete Reference", herbertSchildt, 2021),
@@ -248,7 +579,9 @@ public class BookRepository {
                 new Book(bookIdCounter.incrementAndGet(), "JUnit in Action", petarTahchiev, 2020),
                 new Book(bookIdCounter.incrementAndGet(), "Clean Code", robertMartin, 2008),
                 new Book(bookIdCounter.incrementAndGet(), "The Pragmatic Programmer", andrewHunt, 2019)
-        ));
+        );
+
+        load(authors, owned(books));
     }
 
 }
@@ -1,105 +1,175 @@
 package books.book;
 
+import books.cache.CacheRegion;
+import books.cache.QueryCache;
+import books.graphql.CatalogSnapshotInstrumentation;
+import books.graphql.ResolverMetrics;
 import books.pagination.BookConnection;
+import graphql.GraphQLContext;
+import graphql.schema.DataFetchingEnvironment;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.graphql.data.method.annotation.*;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
 import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
 
-import java.util.Collections;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 @Controller
 public class BooksController {
 
     private static final Logger log = LoggerFactory.getLogger(BooksController.class);
+    private static final String BOOKS_BY_AUTHOR = "booksByAuthor";
+    private static final String ALL = "all";
     private final BookRepository bookRepository;
-
-    public BooksController(BookRepository bookRepository) {
+    private final ResolverMetrics metrics;
+    private final MutationPipeline mutations;
+    private final PinnedSnapshots pinnedSnapshots;
+    private final CacheRegion<String, List<Book>> booksCache;
+    private final CacheRegion<String, List<Author>> authorsCache;
+    private final CacheRegion<Long, Book> bookCache;
+    private final CacheRegion<BookFilter, List<Book>> filterCache;
+    private final Duration simulatedLatency;
+
+    public BooksController(BookRepository bookRepository, QueryCache queryCache, BatchLoaderRegistry registry,
+                           ResolverMetrics metrics, MutationPipeline mutations, PinnedSnapshots pinnedSnapshots,
+                           @Value("${books.graphql.author-books.max-batch-size:256}") int maxBatchSize,
+                           @Value("${books.graphql.author-books.simulated-latency:0s}") Duration simulatedLatency) {
         this.bookRepository = bookRepository;
+        this.simulatedLatency = simulatedLatency;
+        this.metrics = metrics;
+        this.mutations = mutations;
+        this.pinnedSnapshots = pinnedSnapshots;
+        this.booksCache = queryCache.region("books", (all, change) -> change.touchesBooks());
+        this.authorsCache = queryCache.region("authors", (all, change) -> change.touchesAuthors());
+        this.bookCache = queryCache.region("book", (id, change) -> change.touchesBook(id));
+        this.filterCache = queryCache.region("books-with-filter", (filter, change) -> change.touches(filter));
+        registry.<Author, List<Book>>forName(BOOKS_BY_AUTHOR)
+                .withOptions(new DataLoaderOptions().setMaxBatchSize(maxBatchSize))
+                .registerMappedBatchLoader((authors, env) -> {
+                    CatalogSnapshot snapshot = snapshot(env.getContext());
+                    return Mono.fromCallable(() -> loadBooksByAuthor(authors, snapshot));
+                });
+    }
+
+    // the version pinned for this query, or the latest one for a mutation's selections
+    private CatalogSnapshot snapshot(GraphQLContext context) {
+        CatalogSnapshot pinned = CatalogSnapshotInstrumentation.pinned(context);
+        return pinned != null ? pinned : bookRepository.snapshot();
+    }
+
+    private <K, V> V cached(CacheRegion<K, V> region, K key, CatalogSnapshot snapshot, Function<CatalogSnapshot, V> read) {
+        return region.get(key, () -> bookRepository.isCurrent(snapshot), () -> read.apply(snapshot));
     }
 
     // Queries
 
     @QueryMapping
-    public List<Author> authors() {
-        return bookRepository.findAllAuthors();
+    public List<Author> authors(GraphQLContext context) {
+        return cached(authorsCache, ALL, snapshot(context), CatalogSnapshot::findAllAuthors);
     }
 
     @SchemaMapping(typeName = "Query", value = "books")
-    public List<Book> findAllBooks() {
-        return bookRepository.findAll();
+    public List<Book> findAllBooks(GraphQLContext context) {
+        return cached(booksCache, ALL, snapshot(context), CatalogSnapshot::findAll);
     }
 
     @QueryMapping
-    public Book book(@Argument Long id) {
-        return bookRepository.findById(id);
+    public Book book(@Argument Long id, GraphQLContext context) {
+        return cached(bookCache, id, snapshot(context), snapshot -> snapshot.findById(id));
     }
 
     @QueryMapping
-    public List<Book> booksWithFilter(@Argument BookFilter filter) {
-        if (filter == null) {
-            return bookRepository.findAll();
-        }
-
-        return bookRepository.findAll().stream()
-                .filter(book -> matchesFilter(book, filter))
-                .collect(Collectors.toList());
+    public List<Book> booksWithFilter(@Argument BookFilter filter, GraphQLContext context) {
+        return cached(filterCache, filter, snapshot(context), snapshot -> snapshot.findBooks(filter));
     }
 
-    private boolean matchesFilter(Book book, BookFilter filter) {
-        if (filter.authorName() != null &&
-                !book.author().name().toLowerCase().contains(filter.authorName().toLowerCase())) {
-            return false;
-        }
-        if (filter.publishedAfter() != null &&
-                book.publishedYear() < filter.publishedAfter()) {
-            return false;
-        }
-        return true;
+    // Mutations
+
+    @MutationMapping
+    public CompletableFuture<Book> addBook(@Argument String title, @Argument String authorName,
+                                          @Argument Integer publishedYear) {
+        return mutations.addBook(title, authorName, publishedYear);
     }
 
-    // Mutations
+    @MutationMapping
+    public CompletableFuture<Boolean> deleteBook(@Argument Long id) {
+        return mutations.deleteBook(id);
+    }
 
     @MutationMapping
-    public Book addBook(@Argument String title, @Argument String authorName, @Argument Integer publishedYear) {
-        // get author
-        Author authorById = bookRepository.findAuthorByName(authorName);
-        return bookRepository.createBook(title, authorById, publishedYear);
+    public List<Book> addBooks(@Argument List<CreateBookInput> input) {
+        return bookRepository.createBooks(input);
     }
 
     @MutationMapping
-    public boolean deleteBook(@Argument Long id) {
-        return bookRepository.deleteBookById(id);
+    public List<Long> deleteBooks(@Argument List<Long> ids) {
+        return bookRepository.deleteBooks(ids).stream().map(Book::id).toList();
     }
 
     // BATCH MAPPING
 
     @SchemaMapping
-    public List<Book> books(Author author) throws InterruptedException {
+    public CompletableFuture<List<Book>> books(Author author, DataFetchingEnvironment env) {
+        DataLoader<Author, List<Book>> loader = env.getDataLoader(BOOKS_BY_AUTHOR);
+        return loader.load(author);
+    }
+
+    // one backend call and one grouped pass for every author at the current query level
+    private Map<Author, List<Book>> loadBooksByAuthor(Set<Author> authors, CatalogSnapshot snapshot)
+            throws InterruptedException {
 
         log.info("Thread: {}", Thread.currentThread());
 
         // what if this call was to another service?
-        // sleep for 1 second to demonstrate delay
-        TimeUnit.SECONDS.sleep(1);
+        // sleep to demonstrate delay, now paid once per batch instead of once per author
+        if (simulatedLatency.isPositive()) {
+            Thread.sleep(simulatedLatency);
+        }
 
-        log.info("Loading books for author: {}", author.name());
-        return bookRepository.findAll().stream()
-                .filter(book -> book.author().id().equals(author.id()))
-                .collect(Collectors.toList());
-    }
+        log.debug("Loading books for {} authors", authors.size());
+        metrics.recordBatch(BOOKS_BY_AUTHOR, authors.size());
 
+        Map<Long, Author> authorsById = new HashMap<>();
+        for (Author author : authors) {
+            authorsById.put(author.id(), author);
+        }
+
+        Map<Author, List<Book>> booksByAuthor = new HashMap<>();
+        for (Author author : authors) {
+            booksByAuthor.put(author, new ArrayList<>());
+        }
+        for (Book book : snapshot.findBooksByAuthorIds(authorsById.keySet())) {
+            booksByAuthor.get(authorsById.get(book.author().id())).add(book);
+        }
+        return booksByAuthor;
+    }
 
     // PAGINATION
 
+    // pinned pages are read from the version the first page came from, while that version is still retained
     @QueryMapping
     public BookConnection booksPaginated(@Argument Integer first, @Argument String after,
-                                         @Argument Integer last, @Argument String before) {
-        return bookRepository.findBooksPaginated(first, after, last, before);
+                                         @Argument Integer last, @Argument String before,
+                                         @Argument BookOrder orderBy, @Argument BookFilter filter,
+                                         @Argument Boolean pinned, GraphQLContext context) {
+        CatalogSnapshot snapshot = snapshot(context);
+        if (!Boolean.TRUE.equals(pinned)) {
+            return snapshot.findBooksPaginated(first, after, last, before, orderBy, filter);
+        }
+        return pinnedSnapshots.pin(after != null ? after : before, snapshot)
+                .findBooksPaginated(first, after, last, before, orderBy, filter, true);
     }
 
 
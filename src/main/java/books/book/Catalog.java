@@ -0,0 +1,369 @@
+package books.book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of every book and author plus the indexes over them. Writers build a new
+ * catalog and publish it in one volatile write, so readers always see a consistent version without locking.
+ * Every write bumps {@link #version}, which makes it a cheap validator for anything derived from a snapshot.
+ * <p>
+ * Books are held either as {@link Book} records on the heap or in {@link BookColumns}, where the indexes are
+ * arrays of row numbers and the lists handed out create each {@code Book} when it is read. On the heap every
+ * index is a {@link PersistentList}, so a write copies O(log n) nodes per index and shares the rest with the
+ * version before it, and any number of versions can stay alive for the readers still using them.
+ * <p>
+ * Columnar storage is read-mostly. Row numbers shift when a book is deleted, so the row indexes cannot share
+ * structure: every write, even of a single book, copies each sorted row index and the author row map, which is
+ * O(n) time and garbage per write. Prefer heap storage for catalogs with steady write traffic; the
+ * {@code addAndDeleteBook} benchmark in {@code RepositoryBenchmark} shows the difference.
+ */
+final class Catalog {
+
+    private static final List<BookOrder> SORTED_ORDERS =
+            List.of(BookOrder.TITLE, BookOrder.PUBLISHED_YEAR, BookOrder.AUTHOR_NAME);
+
+    static final Catalog EMPTY = of(List.of(), List.of());
+
+    final List<Book> books;
+    final PersistentList<Author> authors;
+    final LongMap<Author> authorsById;
+    final Map<String, Author> authorsByName;
+    final long version;
+
+    // heap storage: the books in every order (id order included) and grouped by (author id, id)
+    private final Map<BookOrder, PersistentList<Book>> sortedBooks;
+    private final PersistentList<Book> booksByAuthor;
+
+    // columnar storage: the same indexes as row numbers
+    private final BookColumns columns;
+    private final Map<BookOrder, int[]> sortedRows;
+    private final LongMap<int[]> rowsByAuthorId;
+
+    // computed on first use; racing readers at worst compute the same value twice
+    private CatalogFootprint footprint;
+
+    private Catalog(long version, Map<BookOrder, PersistentList<Book>> sortedBooks, PersistentList<Book> booksByAuthor,
+                    PersistentList<Author> authors, LongMap<Author> authorsById, Map<String, Author> authorsByName) {
+        this(version, sortedBooks.get(BookOrder.ID), authors, authorsById, authorsByName, sortedBooks, booksByAuthor,
+                null, null, null);
+    }
+
+    private Catalog(long version, List<Book> books, PersistentList<Author> authors, LongMap<Author> authorsById,
+                    Map<String, Author> authorsByName, Map<BookOrder, PersistentList<Book>> sortedBooks,
+                    PersistentList<Book> booksByAuthor, BookColumns columns, Map<BookOrder, int[]> sortedRows,
+                    LongMap<int[]> rowsByAuthorId) {
+        this.version = version;
+        this.books = books;
+        this.authors = authors;
+        this.authorsById = authorsById;
+        this.authorsByName = authorsByName;
+        this.sortedBooks = sortedBooks;
+        this.booksByAuthor = booksByAuthor;
+        this.columns = columns;
+        this.sortedRows = sortedRows;
+        this.rowsByAuthorId = rowsByAuthorId;
+    }
+
+    static Catalog of(List<Author> authors, List<Book> books) {
+        return of(authors, books, 0);
+    }
+
+    static Catalog of(List<Author> authors, List<Book> books, long version) {
+        Map<BookOrder, PersistentList<Book>> sortedBooks = new EnumMap<>(BookOrder.class);
+        for (BookOrder order : BookOrder.values()) {
+            Book[] sorted = books.toArray(new Book[0]);
+            Arrays.parallelSort(sorted, order::compare);
+            sortedBooks.put(order, PersistentList.copyOf(Arrays.asList(sorted)));
+        }
+        Book[] byAuthor = books.stream().filter(book -> book.author() != null).toArray(Book[]::new);
+        Arrays.parallelSort(byAuthor, Catalog::compareByAuthor);
+
+        return new Catalog(version, sortedBooks, PersistentList.copyOf(Arrays.asList(byAuthor)),
+                PersistentList.copyOf(authors), authorsById(authors), authorsByName(authors));
+    }
+
+    private static LongMap<Author> authorsById(List<Author> authors) {
+        LongMap<Author> authorsById = new LongMap<>(authors.size());
+        for (Author author : authors) {
+            authorsById.put(author.id(), author);
+        }
+        return authorsById;
+    }
+
+    private static Map<String, Author> authorsByName(List<Author> authors) {
+        Map<String, Author> authorsByName = new HashMap<>();
+        for (Author author : authors) {
+            authorsByName.putIfAbsent(nameKey(author.name()), author);
+        }
+        return Collections.unmodifiableMap(authorsByName);
+    }
+
+    static Catalog columnar(List<Author> authors, List<Book> books, long version) {
+        Book[] byId = books.toArray(new Book[0]);
+        Arrays.parallelSort(byId, BookOrder.ID::compare);
+        BookColumns columns = BookColumns.of(authors, Arrays.asList(byId));
+
+        Map<BookOrder, int[]> sortedRows = new EnumMap<>(BookOrder.class);
+        for (BookOrder order : SORTED_ORDERS) {
+            Book[] sorted = byId.clone();
+            Arrays.parallelSort(sorted, order::compare);
+            int[] rows = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                rows[i] = columns.row(sorted[i].id());
+            }
+            sortedRows.put(order, rows);
+        }
+
+        // two passes: count each author's books, then fill exactly sized row arrays in id order
+        LongMap<int[]> counts = new LongMap<>();
+        for (Book book : byId) {
+            if (book.author() != null) {
+                int[] count = counts.get(book.author().id());
+                if (count == null) {
+                    counts.put(book.author().id(), count = new int[1]);
+                }
+                count[0]++;
+            }
+        }
+        LongMap<int[]> rowsByAuthorId = new LongMap<>(counts.size());
+        for (int row = 0; row < byId.length; row++) {
+            if (byId[row].author() != null) {
+                long authorId = byId[row].author().id();
+                int[] remaining = counts.get(authorId);
+                int[] rows = rowsByAuthorId.get(authorId);
+                if (rows == null) {
+                    rows = new int[remaining[0]];
+                    rowsByAuthorId.put(authorId, rows);
+                }
+                rows[rows.length - remaining[0]--] = row;
+            }
+        }
+
+        return columnar(version, PersistentList.copyOf(authors), authorsById(authors), authorsByName(authors),
+                columns, sortedRows, rowsByAuthorId);
+    }
+
+    private static Catalog columnar(long version, PersistentList<Author> authors, LongMap<Author> authorsById,
+                                    Map<String, Author> authorsByName, BookColumns columns,
+                                    Map<BookOrder, int[]> sortedRows, LongMap<int[]> rowsByAuthorId) {
+        return new Catalog(version, columns.rows(), authors, authorsById, authorsByName, null, null,
+                columns, sortedRows, rowsByAuthorId);
+    }
+
+    Book book(long id) {
+        if (columns == null) {
+            List<Book> byId = sortedBooks.get(BookOrder.ID);
+            int at = BookOrder.ID.lowerBound(byId, new Book(id, null, null, null));
+            return at < byId.size() && byId.get(at).id() == id ? byId.get(at) : null;
+        }
+        int row = columns.row(id);
+        return row < 0 ? null : columns.book(row);
+    }
+
+    boolean containsBook(long id) {
+        return columns == null ? book(id) != null : columns.row(id) >= 0;
+    }
+
+    // the author's books in id order; empty, never null, for an unknown author or one without books
+    List<Book> booksByAuthor(long authorId) {
+        if (columns != null) {
+            int[] rows = rowsByAuthorId.get(authorId);
+            return rows == null ? List.of() : columns.rows(rows);
+        }
+        return booksByAuthor.subList(authorBound(booksByAuthor, authorId, Long.MIN_VALUE),
+                authorBound(booksByAuthor, authorId, Long.MAX_VALUE));
+    }
+
+    CatalogFootprint footprint() {
+        CatalogFootprint result = footprint;
+        if (result == null) {
+            footprint = result = CatalogFootprint.of(this);
+        }
+        return result;
+    }
+
+    // null for heap storage
+    BookColumns columns() {
+        return columns;
+    }
+
+    // books are kept in id order already; every other order has its own maintained index
+    List<Book> sorted(BookOrder order) {
+        if (columns == null) {
+            return sortedBooks.get(order);
+        }
+        return order == BookOrder.ID ? books : columns.rows(sortedRows.get(order));
+    }
+
+    Catalog withAuthor(Author author) {
+        LongMap<Author> byId = authorsById.copy();
+        byId.put(author.id(), author);
+
+        Map<String, Author> byName = new HashMap<>(authorsByName);
+        byName.putIfAbsent(nameKey(author.name()), author);
+
+        return new Catalog(version + 1, books, authors.with(authors.size(), author), byId, Collections.unmodifiableMap(byName),
+                sortedBooks, booksByAuthor, columns, sortedRows, rowsByAuthorId);
+    }
+
+    // BULK WRITES ===============================================================================================
+
+    // the books must have ids above every existing book, in ascending order; every index takes one O(log n)
+    // path copy per book
+    Catalog withBooks(List<Book> added) {
+        if (added.isEmpty()) {
+            return this;
+        }
+        if (columns != null) {
+            return withColumnarBooks(added);
+        }
+        Map<BookOrder, PersistentList<Book>> sorted = new EnumMap<>(BookOrder.class);
+        for (Map.Entry<BookOrder, PersistentList<Book>> index : sortedBooks.entrySet()) {
+            BookOrder order = index.getKey();
+            PersistentList<Book> list = index.getValue();
+            for (Book book : added) {
+                list = list.with(order.lowerBound(list, book), book);
+            }
+            sorted.put(order, list);
+        }
+        PersistentList<Book> byAuthor = booksByAuthor;
+        for (Book book : added) {
+            if (book.author() != null) {
+                byAuthor = byAuthor.with(authorBound(byAuthor, book.author().id(), book.id()), book);
+            }
+        }
+        return new Catalog(version + 1, sorted, byAuthor, authors, authorsById, authorsByName);
+    }
+
+    // the books must be current members of this catalog
+    Catalog withoutBooks(List<Book> removed) {
+        if (removed.isEmpty()) {
+            return this;
+        }
+        if (columns != null) {
+            return withoutColumnarBooks(removed);
+        }
+        Map<BookOrder, PersistentList<Book>> sorted = new EnumMap<>(BookOrder.class);
+        for (Map.Entry<BookOrder, PersistentList<Book>> index : sortedBooks.entrySet()) {
+            BookOrder order = index.getKey();
+            PersistentList<Book> list = index.getValue();
+            for (Book book : removed) {
+                list = list.without(order.lowerBound(list, book));
+            }
+            sorted.put(order, list);
+        }
+        PersistentList<Book> byAuthor = booksByAuthor;
+        for (Book book : removed) {
+            if (book.author() != null) {
+                byAuthor = byAuthor.without(authorBound(byAuthor, book.author().id(), book.id()));
+            }
+        }
+        return new Catalog(version + 1, sorted, byAuthor, authors, authorsById, authorsByName);
+    }
+
+    // COLUMNAR ==================================================================================================
+
+    private Catalog withColumnarBooks(List<Book> added) {
+        BookColumns next = columns.with(added);
+
+        Map<BookOrder, int[]> rows = new EnumMap<>(BookOrder.class);
+        sortedRows.forEach((order, orderRows) -> {
+            List<Book> current = sorted(order);
+            Book[] batch = sortedBy(added, order);
+            int[] merged = new int[orderRows.length + batch.length];
+            int from = 0;
+            int to = 0;
+            for (Book book : batch) {
+                int at = order.lowerBound(current, book);
+                System.arraycopy(orderRows, from, merged, to, at - from);
+                to += at - from;
+                merged[to++] = next.row(book.id());
+                from = at;
+            }
+            System.arraycopy(orderRows, from, merged, to, orderRows.length - from);
+            rows.put(order, merged);
+        });
+
+        LongMap<int[]> authorRows = rowsByAuthorId.copy();
+        groupByAuthor(added).forEach((authorId, group) -> {
+            int[] existing = authorRows.get(authorId);
+            int[] appended = Arrays.copyOf(existing == null ? new int[0] : existing,
+                    (existing == null ? 0 : existing.length) + group.size());
+            for (int i = 0; i < group.size(); i++) {
+                appended[appended.length - group.size() + i] = next.row(group.get(i).id());
+            }
+            authorRows.put(authorId, appended);
+        });
+        return columnar(version + 1, authors, authorsById, authorsByName, next, rows, authorRows);
+    }
+
+    // rows after a deleted one move up, so every index is rewritten in a single pass through a row remapping
+    private Catalog withoutColumnarBooks(List<Book> removed) {
+        int[] removedRows = removed.stream().mapToInt(book -> columns.row(book.id())).filter(row -> row >= 0)
+                .sorted().distinct().toArray();
+        if (removedRows.length == 0) {
+            return this;
+        }
+        BookColumns next = columns.without(removedRows);
+        int[] remap = BookColumns.remap(columns.size(), removedRows);
+
+        Map<BookOrder, int[]> rows = new EnumMap<>(BookOrder.class);
+        sortedRows.forEach((order, orderRows) -> rows.put(order, BookColumns.remapRows(orderRows, remap)));
+
+        LongMap<int[]> authorRows = new LongMap<>(rowsByAuthorId.size());
+        rowsByAuthorId.forEach((authorId, groupRows) -> {
+            // groups are in row order; one that ends before the first deleted row keeps its row numbers
+            if (groupRows[groupRows.length - 1] < removedRows[0]) {
+                authorRows.put(authorId, groupRows);
+                return;
+            }
+            int[] remaining = BookColumns.remapRows(groupRows, remap);
+            if (remaining.length > 0) {
+                authorRows.put(authorId, remaining);
+            }
+        });
+        return columnar(version + 1, authors, authorsById, authorsByName, next, rows, authorRows);
+    }
+
+    // INDEX HELPERS =============================================================================================
+
+    private static int compareByAuthor(Book a, Book b) {
+        int result = Long.compare(a.author().id(), b.author().id());
+        return result != 0 ? result : Long.compare(a.id(), b.id());
+    }
+
+    // index of the first book of the (author id, id) index at or after the given pair
+    private static int authorBound(PersistentList<Book> byAuthor, long authorId, long bookId) {
+        return byAuthor.lowerBound(book -> book.author().id() < authorId
+                || (book.author().id() == authorId && book.id() < bookId));
+    }
+
+    static String nameKey(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    private static Book[] sortedBy(List<Book> books, BookOrder order) {
+        Book[] sorted = books.toArray(new Book[0]);
+        Arrays.sort(sorted, order::compare);
+        return sorted;
+    }
+
+    private static Map<Long, List<Book>> groupByAuthor(List<Book> books) {
+        Map<Long, List<Book>> grouped = new LinkedHashMap<>();
+        for (Book book : books) {
+            if (book.author() != null) {
+                grouped.computeIfAbsent(book.author().id(), id -> new ArrayList<>()).add(book);
+            }
+        }
+        return grouped;
+    }
+
+}
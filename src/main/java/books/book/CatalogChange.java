@@ -0,0 +1,52 @@
+package books.book;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * What a single repository write changed. Listeners receive one change per write, in commit order,
+ * and can use the helpers to decide whether data derived from the catalog is affected. A load that replaces
+ * the whole catalog, such as a replica's snapshot catch-up, is reported as its difference to the catalog before it.
+ */
+public record CatalogChange(List<Book> addedBooks, List<Book> deletedBooks, List<Author> addedAuthors) {
+
+    static CatalogChange bookAdded(Book book) {
+        return new CatalogChange(List.of(book), List.of(), List.of());
+    }
+
+    static CatalogChange bookDeleted(Book book) {
+        return new CatalogChange(List.of(), List.of(book), List.of());
+    }
+
+    static CatalogChange authorAdded(Author author) {
+        return new CatalogChange(List.of(), List.of(), List.of(author));
+    }
+
+    public boolean touchesBooks() {
+        return !addedBooks.isEmpty() || !deletedBooks.isEmpty();
+    }
+
+    public boolean touchesAuthors() {
+        return !addedAuthors.isEmpty();
+    }
+
+    public boolean touchesBook(Long id) {
+        return anyBook(book -> book.id().equals(id));
+    }
+
+    public boolean touches(BookFilter filter) {
+        return filter == null || filter.isEmpty() ? touchesBooks() : anyBook(filter::matches);
+    }
+
+    // true if any changed title or author name contains the text, ignoring case
+    public boolean touchesText(String text) {
+        String part = text == null ? "" : text.trim();
+        return anyBook(book -> BookFilter.containsIgnoreCase(book.title(), part))
+                || addedAuthors.stream().anyMatch(author -> BookFilter.containsIgnoreCase(author.name(), part));
+    }
+
+    private boolean anyBook(Predicate<Book> predicate) {
+        return addedBooks.stream().anyMatch(predicate) || deletedBooks.stream().anyMatch(predicate);
+    }
+
+}
@@ -0,0 +1,144 @@
+package books.book;
+
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Binary encoding shared by the change log and snapshots. Ids are longs, a missing author is id -1,
+ * a missing year is {@link Integer#MIN_VALUE} and strings are length-prefixed UTF-8 with -1 for null.
+ */
+final class CatalogCodec {
+
+    private static final long NO_AUTHOR = -1;
+    private static final int NO_YEAR = Integer.MIN_VALUE;
+
+    private CatalogCodec() {
+    }
+
+    static void writeChange(DataOutputStream out, CatalogChange change) throws IOException {
+        writeAuthors(out, change.addedAuthors());
+        writeBooks(out, change.addedBooks());
+        out.writeInt(change.deletedBooks().size());
+        for (Book book : change.deletedBooks()) {
+            out.writeLong(book.id());
+        }
+    }
+
+    static void writeAuthors(DataOutputStream out, List<Author> authors) throws IOException {
+        out.writeInt(authors.size());
+        for (Author author : authors) {
+            out.writeLong(author.id());
+            writeString(out, author.name());
+        }
+    }
+
+    static void writeBooks(DataOutputStream out, List<Book> books) throws IOException {
+        out.writeInt(books.size());
+        for (Book book : books) {
+            out.writeLong(book.id());
+            writeString(out, book.title());
+            out.writeLong(book.author() == null ? NO_AUTHOR : book.author().id());
+            out.writeInt(book.publishedYear() == null ? NO_YEAR : book.publishedYear());
+        }
+    }
+
+    static List<Author> readAuthors(ByteBuffer in) {
+        int count = in.getInt();
+        List<Author> authors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            authors.add(new Author(in.getLong(), readString(in)));
+        }
+        return authors;
+    }
+
+    // authors are resolved through the caller, so every book shares the one Author instance
+    static List<Book> readBooks(ByteBuffer in, LongFunction<Author> authorsById) {
+        int count = in.getInt();
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long id = in.getLong();
+            String title = readString(in);
+            long authorId = in.getLong();
+            int year = in.getInt();
+            books.add(new Book(id, title, authorId == NO_AUTHOR ? null : authorsById.apply(authorId),
+                    year == NO_YEAR ? null : year));
+        }
+        return books;
+    }
+
+    // the same records read from a stream, for snapshots too large to map as one buffer
+    static List<Author> readAuthors(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<Author> authors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            authors.add(new Author(in.readLong(), readString(in)));
+        }
+        return authors;
+    }
+
+    static List<Book> readBooks(DataInput in, LongFunction<Author> authorsById) throws IOException {
+        int count = in.readInt();
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long id = in.readLong();
+            String title = readString(in);
+            long authorId = in.readLong();
+            int year = in.readInt();
+            books.add(new Book(id, title, authorId == NO_AUTHOR ? null : authorsById.apply(authorId),
+                    year == NO_YEAR ? null : year));
+        }
+        return books;
+    }
+
+    static long[] readIds(ByteBuffer in) {
+        long[] ids = new long[in.getInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = in.getLong();
+        }
+        return ids;
+    }
+
+    static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
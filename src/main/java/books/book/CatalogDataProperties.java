@@ -0,0 +1,72 @@
+package books.book;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("books.data")
+public record CatalogDataProperties(Source source, Synthetic synthetic, Durable durable, Storage storage, int shards,
+                                    Node node) {
+
+    public static final CatalogDataProperties SEED = new CatalogDataProperties(Source.SEED, null, null, null, 1, null);
+
+    public CatalogDataProperties {
+        source = source == null ? Source.SEED : source;
+        synthetic = synthetic == null ? new Synthetic(0, 0, null, 0) : synthetic;
+        durable = durable == null ? new Durable(false, null, 0) : durable;
+        storage = storage == null ? Storage.HEAP : storage;
+        shards = shards > 0 ? shards : 1;
+        node = node == null ? new Node(0, 1) : node;
+    }
+
+    public enum Source {
+        SEED,
+        SYNTHETIC
+    }
+
+    // HEAP keeps a Book record per book; COLUMNAR keeps primitive columns and off-heap titles and creates Book
+    // records only when they are read. COLUMNAR is read-mostly: each write copies its row indexes, O(n) per write.
+    public enum Storage {
+        HEAP,
+        COLUMNAR
+    }
+
+    // seed is nullable so that any explicit value, 0 included, selects that catalog
+    public record Synthetic(int authors, int books, Long seed, double zipfExponent) {
+
+        public Synthetic {
+            authors = authors > 0 ? authors : 1_000;
+            books = books > 0 ? books : 100_000;
+            seed = seed != null ? seed : 42L;
+            zipfExponent = zipfExponent > 0 ? zipfExponent : 1.1;
+        }
+
+    }
+
+    // one of count separate instances that together hold the catalog: this one loads only the books whose author
+    // hashes to index, with the same hash as the in-process shards. Callers scatter reads over every node and merge
+    // them. Writes are not coordinated between nodes, so the repository refuses them when count is above 1.
+    public record Node(int index, int count) {
+
+        public Node {
+            count = count > 0 ? count : 1;
+            if (index < 0 || index >= count) {
+                throw new IllegalArgumentException("Node index " + index + " is not below the node count " + count);
+            }
+        }
+
+        boolean owns(Book book) {
+            return count == 1 || ShardedCatalog.shardOf(book, count) == index;
+        }
+
+    }
+
+    // off by default: the catalog is rebuilt from seed or synthetic data on every start
+    public record Durable(boolean enabled, String directory, int snapshotEvery) {
+
+        public Durable {
+            directory = directory == null || directory.isBlank() ? "data" : directory;
+            snapshotEvery = snapshotEvery > 0 ? snapshotEvery : 10_000;
+        }
+
+    }
+
+}
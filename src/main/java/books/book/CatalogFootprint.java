@@ -0,0 +1,37 @@
+package books.book;
+
+import java.util.List;
+
+/**
+ * Estimated memory held by the books of one catalog version and the indexes over them. Heap figures assume
+ * compressed oops and Latin-1 titles; authors and the search indexes are the same for both storages and left out.
+ */
+public record CatalogFootprint(CatalogDataProperties.Storage storage, int books, long heapBytes, long offHeapBytes) {
+
+    // Book (32) + boxed id (24) + boxed year (16) + String (24) + leaf references from the id, title, year,
+    // author name and per-author indexes (20) plus their share of the tree nodes (4); the title bytes come on top
+    private static final long HEAP_BYTES_PER_BOOK = 32 + 24 + 16 + 24 + 20 + 4;
+    private static final long ARRAY_HEADER = 16;
+
+    static CatalogFootprint of(Catalog catalog) {
+        BookColumns columns = catalog.columns();
+        int books = catalog.books.size();
+        if (columns != null) {
+            // three order permutations plus the per-author groups, one int per book each
+            long indexBytes = (long) books * Integer.BYTES * 4;
+            return new CatalogFootprint(CatalogDataProperties.Storage.COLUMNAR, books,
+                    columns.heapBytes() + indexBytes, columns.offHeapBytes());
+        }
+        long heapBytes = 0;
+        List<Book> all = catalog.books;
+        for (Book book : all) {
+            heapBytes += HEAP_BYTES_PER_BOOK + (book.title() == null ? 0 : align(ARRAY_HEADER + book.title().length()));
+        }
+        return new CatalogFootprint(CatalogDataProperties.Storage.HEAP, books, heapBytes, 0);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+}
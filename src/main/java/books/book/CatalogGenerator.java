@@ -0,0 +1,127 @@
+package books.book;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a reproducible synthetic catalog for load tests and benchmarks. Books are assigned to
+ * authors with a Zipfian distribution (a few prolific authors, a long tail of one-book authors),
+ * publication years skew towards recent releases and titles are composed from topic vocabularies.
+ */
+public final class CatalogGenerator {
+
+    private static final int LATEST_YEAR = 2025;
+    private static final int EARLIEST_YEAR = 1960;
+    private static final double MEAN_BOOK_AGE = 9.0;
+
+    private static final String[] FIRST_NAMES = {
+            "Ada", "Alan", "Barbara", "Brian", "Carla", "Craig", "Dan", "Diana", "Edsger", "Emma", "Frances",
+            "Grace", "Greg", "Hannah", "Ivan", "Josh", "Julia", "Ken", "Laura", "Linus", "Margaret", "Mark",
+            "Nate", "Nina", "Oscar", "Priya", "Raoul", "Rod", "Sara", "Thomas", "Venkat", "Yuki"
+    };
+    private static final String[] LAST_NAMES = {
+            "Bloch", "Carnell", "Dijkstra", "Fowler", "Goetz", "Heckler", "Hopper", "Hunt", "Johnson", "Kay",
+            "Knuth", "Kousen", "Liskov", "Long", "Lovelace", "Martin", "Nakamura", "Okafor", "Patel", "Ritchie",
+            "Schutta", "Spilca", "Thompson", "Turing", "Urma", "Vega", "Vitale", "Walls", "Wirth", "Zhang"
+    };
+    private static final String[] LEADS = {
+            "Modern", "Effective", "Practical", "Reactive", "Cloud Native", "Functional", "Pragmatic",
+            "Professional", "Learning", "Mastering", "Building", "Pro", "Hands-On", "Beginning", "Advanced"
+    };
+    private static final String[] TOPICS = {
+            "Java", "Spring", "Spring Boot", "Kotlin", "GraphQL", "Microservices", "Concurrency", "Security",
+            "Testing", "Data Access", "Architecture", "Design Patterns", "Refactoring", "Observability",
+            "Distributed Systems", "Event Streaming", "APIs", "Performance", "Algorithms", "DevOps"
+    };
+    private static final String[] SUFFIXES = {
+            "in Action", "in Practice", "Cookbook", "Recipes", "Up and Running", "for Developers",
+            "Essentials", "Patterns", "The Complete Reference", "from Scratch", "Deep Dive", "Explained"
+    };
+
+    public record Dataset(List<Author> authors, List<Book> books) {}
+
+    private CatalogGenerator() {
+    }
+
+    public static Dataset generate(CatalogDataProperties.Synthetic spec) {
+        SplittableRandom random = new SplittableRandom(spec.seed());
+
+        List<Author> authors = new ArrayList<>(spec.authors());
+        int combinations = FIRST_NAMES.length * LAST_NAMES.length;
+        for (int i = 0; i < spec.authors(); i++) {
+            String name = FIRST_NAMES[i % FIRST_NAMES.length] + " " + LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+            // keep names unique so findAuthorByName stays unambiguous
+            authors.add(new Author(i + 1L, i < combinations ? name : name + " " + (i / combinations + 1)));
+        }
+
+        double[] cumulative = zipfCumulative(spec.authors(), spec.zipfExponent());
+        int[] rankToAuthor = shuffledRanks(spec.authors(), random);
+
+        List<Book> books = new ArrayList<>(spec.books());
+        for (int i = 0; i < spec.books(); i++) {
+            Author author = authors.get(rankToAuthor[sample(cumulative, random.nextDouble())]);
+            books.add(new Book(i + 1L, title(random), author, year(random)));
+        }
+        return new Dataset(authors, books);
+    }
+
+    // cumulative, normalized weights 1/k^s for ranks 1..n
+    private static double[] zipfCumulative(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] cumulative, double uniform) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < uniform) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // prolific authors are spread across the id space rather than all being the first ids
+    private static int[] shuffledRanks(int n, SplittableRandom random) {
+        int[] ranks = new int[n];
+        for (int i = 0; i < n; i++) {
+            ranks[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = ranks[i];
+            ranks[i] = ranks[j];
+            ranks[j] = swap;
+        }
+        return ranks;
+    }
+
+    private static String title(SplittableRandom random) {
+        String topic = TOPICS[random.nextInt(TOPICS.length)];
+        return switch (random.nextInt(4)) {
+            case 0 -> topic + " " + SUFFIXES[random.nextInt(SUFFIXES.length)];
+            case 1 -> LEADS[random.nextInt(LEADS.length)] + " " + topic;
+            default -> LEADS[random.nextInt(LEADS.length)] + " " + topic + " " + SUFFIXES[random.nextInt(SUFFIXES.length)];
+        };
+    }
+
+    // exponentially distributed age: most books are recent, a long tail reaches back decades
+    private static int year(SplittableRandom random) {
+        int age = (int) (-MEAN_BOOK_AGE * Math.log(1 - random.nextDouble()));
+        return Math.max(EARLIEST_YEAR, LATEST_YEAR - age);
+    }
+
+}
@@ -0,0 +1,34 @@
+package books.book;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gauges for the estimated memory held by the catalog's books, tagged by area ({@code heap}, {@code off-heap}),
+ * so the heap and columnar storages can be compared on the same dataset. The estimate is cached per catalog version.
+ * {@code books.catalog.pinned.versions} counts the older versions retained for pinned pagination cursors.
+ */
+@Component
+public class CatalogMetrics {
+
+    static final String MEMORY = "books.catalog.memory";
+    static final String BOOKS = "books.catalog.books";
+    static final String PINNED_VERSIONS = "books.catalog.pinned.versions";
+
+    public CatalogMetrics(BookRepository repository, PinnedSnapshots pinnedSnapshots, MeterRegistry registry) {
+        Gauge.builder(MEMORY, repository, r -> r.footprint().heapBytes())
+                .tag("area", "heap")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder(MEMORY, repository, r -> r.footprint().offHeapBytes())
+                .tag("area", "off-heap")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder(BOOKS, repository, r -> r.footprint().books())
+                .register(registry);
+        Gauge.builder(PINNED_VERSIONS, pinnedSnapshots, PinnedSnapshots::pinnedVersions)
+                .register(registry);
+    }
+
+}
@@ -0,0 +1,189 @@
+package books.book;
+
+import books.pagination.BookConnection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * Every read of {@link BookRepository} against one catalog version. Writers never change a version once it is
+ * published, so a caller that takes a snapshot once and makes all its reads through it sees one consistent
+ * catalog however many writes land in between, without locking and without copying. A version lives exactly
+ * as long as some snapshot or newer version still references its nodes.
+ * <p>
+ * The search indexes are shared by all versions. Hits are checked against this version, so a search never returns
+ * a book or author the version does not have, and once a later write has removed texts this version still has, its
+ * searches scan the version itself, so they never miss one either.
+ * <p>
+ * On a sharded catalog, filters, searches and pages run on every shard in parallel and the sorted partial
+ * results are merged; lookups by author go to the author's shard only.
+ */
+public final class CatalogSnapshot {
+
+    private static final Comparator<Book> BY_ID = BookOrder.ID::compare;
+
+    final ShardedCatalog catalog;
+    // one title index per shard
+    private final TextIndex[] bookTitles;
+    private final TextIndex authorNames;
+    private final Executor shardExecutor;
+
+    CatalogSnapshot(ShardedCatalog catalog, TextIndex[] bookTitles, TextIndex authorNames, Executor shardExecutor) {
+        this.catalog = catalog;
+        this.bookTitles = bookTitles;
+        this.authorNames = authorNames;
+        this.shardExecutor = shardExecutor;
+    }
+
+    // the repository's data version this snapshot reads
+    public long version() {
+        return catalog.version;
+    }
+
+    // BOOKS ====================================================================================================
+
+    public List<Book> findAll() {
+        return catalog.books();
+    }
+
+    // findAll() one book at a time in id order; unlike findAll(), never builds a merged list of all shards
+    public Iterator<Book> iterateAll() {
+        return catalog.booksIterator();
+    }
+
+    public Book findById(Long id) {
+        return id == null ? null : catalog.book(id);
+    }
+
+    public List<Book> findBooks(BookFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return catalog.books();
+        }
+        long[] authorIds = BookFilterEngine.authorIds(catalog, authorNames, filter);
+        List<List<Book>> matches = scatter(shard -> BookFilterEngine.find(catalog.shard(shard), filter, authorIds));
+        return ShardedCatalog.merge(matches, BY_ID, Integer.MAX_VALUE);
+    }
+
+    public List<Book> findBooksByAuthorIds(Collection<Long> authorIds) {
+        List<Book> result = new ArrayList<>();
+        for (Long authorId : authorIds instanceof Set<Long> ? authorIds : new HashSet<>(authorIds)) {
+            if (authorId != null) {
+                result.addAll(catalog.booksByAuthor(authorId));
+            }
+        }
+        return result;
+    }
+
+    // AUTHORS ===================================================================================================
+
+    public List<Author> findAllAuthors() {
+        return catalog.authors();
+    }
+
+    public Author findAuthorById(Long id) {
+        return id == null ? null : catalog.authorsById().get(id);
+    }
+
+    public Author findAuthorByName(String name) {
+        return name == null ? null : catalog.authorByName(name);
+    }
+
+    // SEARCH ====================================================================================================
+
+    public List<Object> search(String text, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        String query = TextIndex.normalize(text);
+        List<TextIndex.Hit> bookHits = ShardedCatalog.merge(
+                scatter(shard -> searchTitles(shard, query, limit)), TextIndex.ORDER, limit);
+        List<TextIndex.Hit> authorHits = authorNames.search(query, limit, id -> catalog.authorsById().get(id) != null);
+        if (!authorNames.covers(catalog.version)) {
+            authorHits = TextIndex.scan(catalog.authors(), Author::id, Author::name, query, limit);
+        }
+
+        // both hit lists are already ranked, so a merge of the two heads is enough
+        List<Object> results = new ArrayList<>(Math.min(limit, bookHits.size() + authorHits.size()));
+        int b = 0;
+        int a = 0;
+        while (results.size() < limit && (b < bookHits.size() || a < authorHits.size())) {
+            if (a == authorHits.size()
+                    || (b < bookHits.size() && TextIndex.ORDER.compare(bookHits.get(b), authorHits.get(a)) <= 0)) {
+                results.add(catalog.book(bookHits.get(b++).id()));
+            } else {
+                results.add(catalog.authorsById().get(authorHits.get(a++).id()));
+            }
+        }
+        return results;
+    }
+
+    private List<TextIndex.Hit> searchTitles(int shard, String query, int limit) {
+        Catalog books = catalog.shard(shard);
+        List<TextIndex.Hit> hits = bookTitles[shard].search(query, limit, books::containsBook);
+        if (bookTitles[shard].covers(catalog.version)) {
+            return hits;
+        }
+        return TextIndex.scan(books.sorted(BookOrder.ID), Book::id, Book::title, query, limit);
+    }
+
+    // PAGINATION ================================================================================================
+
+    public BookConnection findBooksPaginated(Integer first, String after, Integer last, String before,
+                                             BookOrder order, BookFilter filter) {
+        return findBooksPaginated(first, after, last, before, order, filter, false);
+    }
+
+    // pinned pages stamp this version into their cursors, see PinnedSnapshots
+    public BookConnection findBooksPaginated(Integer first, String after, Integer last, String before,
+                                             BookOrder order, BookFilter filter, boolean pinned) {
+        BookOrder sortOrder = order == null ? BookOrder.ID : order;
+        long version = pinned ? catalog.version : BookCursor.UNPINNED;
+        if (catalog.shardCount() == 1) {
+            return BookPaginator.page(catalog.shard(0).sorted(sortOrder), sortOrder, filter, first, after, last, before,
+                    version);
+        }
+        Integer shardLast = first == null ? last : null;
+        List<BookConnection> pages = scatter(shard -> BookPaginator.page(catalog.shard(shard).sorted(sortOrder),
+                sortOrder, filter, first, after, shardLast, before, version));
+        return BookPaginator.merge(pages, sortOrder, first, last);
+    }
+
+    // SHARDS ====================================================================================================
+
+    // runs the query on every shard at once, the calling thread taking shard 0; results are in shard order
+    private <T> List<T> scatter(IntFunction<T> query) {
+        int shards = catalog.shardCount();
+        if (shards == 1) {
+            return List.of(query.apply(0));
+        }
+        List<CompletableFuture<T>> forks = new ArrayList<>(shards - 1);
+        for (int i = 1; i < shards; i++) {
+            int shard = i;
+            forks.add(CompletableFuture.supplyAsync(() -> query.apply(shard), shardExecutor));
+        }
+        List<T> results = new ArrayList<>(shards);
+        results.add(query.apply(0));
+        for (CompletableFuture<T> fork : forks) {
+            try {
+                results.add(fork.join());
+            } catch (CompletionException e) {
+                // rethrow what the shard threw, e.g. the IllegalArgumentException of an invalid cursor
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,560 @@
+package books.book;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable catalog storage: an append-only log of checksummed change records plus periodic snapshots.
+ * <p>
+ * Writers encode their change under the repository write lock and then wait outside it; a single committer
+ * thread writes everything queued since its last pass and forces it to disk once, so concurrent writers share
+ * one fsync. Every {@code snapshotEvery} records the log rolls to a new segment and the catalog as of the roll
+ * is written to a snapshot in the background, after which older segments and snapshots are deleted. Recovery
+ * streams the newest valid snapshot, which may be far larger than one 2 GiB mapping, and replays only the
+ * segments after it, truncating a torn final record. New segments and renamed snapshots are made durable by
+ * forcing their directory as well. A catalog that was loaded rather than built from logged records exists in no
+ * log, so its snapshot is written before the load returns and any write on top of it can be acknowledged.
+ */
+final class CatalogStore implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogStore.class);
+    private static final int SNAPSHOT_MAGIC = 0x424B534E;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int RECORD_HEADER = 8;
+    private static final int SNAPSHOT_HEADER = 4 + 4 + 8 * 3;
+    private static final Pattern SEGMENT = Pattern.compile("log-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    record Recovered(List<Author> authors, List<Book> books, long bookIdCounter, long authorIdCounter) {
+    }
+
+    private record Pending(long lsn, byte[] bytes) {
+    }
+
+    private record Roll(long lsn, ShardedCatalog catalog, long bookIdCounter, long authorIdCounter,
+                        CompletableFuture<Void> written) {
+    }
+
+    private final Path directory;
+    private final int snapshotEvery;
+    private final Recovered recovered;
+    private final Object lock = new Object();
+    private final ArrayDeque<Object> queue = new ArrayDeque<>();
+    private final ExecutorService snapshots =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("catalog-snapshot").factory());
+    private final Thread committer;
+
+    // committer thread only
+    private FileChannel segment;
+    private long segmentFirstLsn;
+
+    // repository write lock
+    private long appendedLsn;
+    private long snapshotLsn;
+
+    // guarded by lock
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+
+    private CatalogStore(Path directory, int snapshotEvery, Recovered recovered, long lastLsn, long snapshotLsn,
+                         FileChannel segment, long segmentFirstLsn) {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        this.recovered = recovered;
+        this.appendedLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.snapshotLsn = snapshotLsn;
+        this.segment = segment;
+        this.segmentFirstLsn = segmentFirstLsn;
+        this.committer = Thread.ofPlatform().daemon().name("catalog-log").start(this::commitLoop);
+    }
+
+    // null when the directory holds no snapshot and no log records
+    Recovered recovered() {
+        return recovered;
+    }
+
+    // OPEN AND RECOVER ==========================================================================================
+
+    static CatalogStore open(Path directory, int snapshotEvery) throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(file -> file.toString().endsWith(".tmp")).toList()) {
+                Files.delete(file);
+            }
+        }
+        long start = System.nanoTime();
+        Replay replay = new Replay();
+        long snapshotLsn = loadNewestSnapshot(directory, replay);
+
+        List<Path> segments = files(directory, SEGMENT);
+        long lastLsn = snapshotLsn;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            if (!last && number(segments.get(i + 1), SEGMENT) - 1 <= snapshotLsn) {
+                continue;
+            }
+            long end = replaySegment(segments.get(i), snapshotLsn, lastLsn, replay);
+            lastLsn = Math.max(lastLsn, replay.lastLsn);
+            if (end < Files.size(segments.get(i))) {
+                if (!last) {
+                    throw new IOException("Corrupt log segment " + segments.get(i) + " at offset " + end);
+                }
+                log.warn("Truncating torn tail of {} at offset {}", segments.get(i), end);
+                try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                }
+            }
+        }
+
+        FileChannel segment;
+        long segmentFirstLsn;
+        if (segments.isEmpty()) {
+            segmentFirstLsn = lastLsn + 1;
+            segment = openSegment(directory, segmentFirstLsn);
+        } else {
+            Path current = segments.getLast();
+            segmentFirstLsn = number(current, SEGMENT);
+            segment = FileChannel.open(current, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        Recovered recovered = replay.empty() ? null : replay.result();
+        if (recovered != null) {
+            log.info("Recovered {} authors and {} books from {} (snapshot lsn {}, log tail to lsn {}) in {} ms",
+                    recovered.authors().size(), recovered.books().size(), directory, snapshotLsn, lastLsn,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        return new CatalogStore(directory, snapshotEvery, recovered, lastLsn, snapshotLsn, segment, segmentFirstLsn);
+    }
+
+    // newest snapshot that passes its checksum; older ones are only a fallback if a newer write was cut short.
+    // The checksum is verified in a first pass, so the records are only decoded from intact bytes.
+    private static long loadNewestSnapshot(Path directory, Replay replay) throws IOException {
+        List<Path> snapshotFiles = files(directory, SNAPSHOT);
+        for (Path file : snapshotFiles.reversed()) {
+            long size = Files.size(file);
+            if (size < SNAPSHOT_HEADER + 4 * 2 + 4) {
+                log.warn("Ignoring truncated snapshot {}", file);
+                continue;
+            }
+            if (!checksumMatches(file, size - 4)) {
+                log.warn("Ignoring corrupt snapshot {}", file);
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                    log.warn("Ignoring corrupt snapshot {}", file);
+                    continue;
+                }
+                long lsn = in.readLong();
+                replay.restore(in, lsn, in.readLong(), in.readLong());
+                return lsn;
+            }
+        }
+        return 0;
+    }
+
+    // CRC32 of the first length bytes against the int stored after them, read in chunks
+    private static boolean checksumMatches(Path file, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long position = 0; position < length; ) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    return false;
+                }
+                crc.update(buffer.flip());
+                position += read;
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, length + trailer.position()) < 0) {
+                    return false;
+                }
+            }
+            return trailer.getInt(0) == (int) crc.getValue();
+        }
+    }
+
+    // returns the offset just past the last intact record
+    private static long replaySegment(Path file, long snapshotLsn, long lastLsn, Replay replay) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int position = 0;
+            while (map.limit() - position >= RECORD_HEADER) {
+                int length = map.getInt(position);
+                int crc = map.getInt(position + 4);
+                if (length < 8 || length > map.limit() - position - RECORD_HEADER) {
+                    break;
+                }
+                ByteBuffer payload = map.slice(position + RECORD_HEADER, length);
+                if (CatalogCodec.crc(payload) != crc) {
+                    break;
+                }
+                long lsn = payload.getLong();
+                if (lsn > snapshotLsn) {
+                    if (lsn != Math.max(lastLsn, replay.lastLsn) + 1) {
+                        throw new IOException("Log gap in " + file + ": expected lsn "
+                                + (Math.max(lastLsn, replay.lastLsn) + 1) + " but found " + lsn);
+                    }
+                    replay.apply(payload, lsn);
+                }
+                position += RECORD_HEADER + length;
+            }
+            return position;
+        }
+    }
+
+    // APPEND ====================================================================================================
+
+    // called under the repository write lock, so lsns follow commit order
+    long append(CatalogChange change) {
+        long lsn = ++appendedLsn;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeLong(lsn);
+            CatalogCodec.writeChange(out, change);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] record = bytes.toByteArray();
+        ByteBuffer header = ByteBuffer.wrap(record);
+        header.putInt(0, record.length - RECORD_HEADER);
+        header.putInt(4, CatalogCodec.crc(ByteBuffer.wrap(record, RECORD_HEADER, record.length - RECORD_HEADER)));
+        enqueue(new Pending(lsn, record));
+        return lsn;
+    }
+
+    boolean snapshotDue() {
+        return appendedLsn - snapshotLsn >= snapshotEvery;
+    }
+
+    // called under the repository write lock with the catalog as of the last appended record
+    void snapshot(ShardedCatalog catalog, long bookIdCounter, long authorIdCounter) {
+        enqueueRoll(catalog, bookIdCounter, authorIdCounter);
+    }
+
+    // called under the repository write lock with a catalog that replaced the logged one. Only the snapshot holds
+    // it, so the caller keeps the lock until the snapshot is on disk; if it cannot be written the store refuses
+    // further writes instead of logging them on top of a catalog that a restart would not find.
+    void snapshotNow(ShardedCatalog catalog, long bookIdCounter, long authorIdCounter) {
+        try {
+            enqueueRoll(catalog, bookIdCounter, authorIdCounter).join();
+        } catch (CompletionException e) {
+            IOException cause = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            synchronized (lock) {
+                failure = cause;
+                lock.notifyAll();
+            }
+            throw new UncheckedIOException("Cannot write the catalog snapshot", cause);
+        }
+    }
+
+    private CompletableFuture<Void> enqueueRoll(ShardedCatalog catalog, long bookIdCounter, long authorIdCounter) {
+        snapshotLsn = appendedLsn;
+        Roll roll = new Roll(appendedLsn, catalog, bookIdCounter, authorIdCounter, new CompletableFuture<>());
+        enqueue(roll);
+        return roll.written();
+    }
+
+    void awaitDurable(long lsn) {
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (durableLsn < lsn && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (durableLsn < lsn) {
+                throw new UncheckedIOException("Catalog log is not writable", failure);
+            }
+        }
+    }
+
+    private void enqueue(Object entry) {
+        synchronized (lock) {
+            if (failure != null) {
+                throw new UncheckedIOException("Catalog log is not writable", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Catalog store is closed");
+            }
+            queue.add(entry);
+            lock.notifyAll();
+        }
+    }
+
+    // COMMITTER =================================================================================================
+
+    private void commitLoop() {
+        List<Object> batch = new ArrayList<>();
+        while (true) {
+            synchronized (lock) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch.addAll(queue);
+                queue.clear();
+            }
+            long committed = 0;
+            try {
+                List<ByteBuffer> writes = new ArrayList<>(batch.size());
+                for (Object entry : batch) {
+                    if (entry instanceof Pending pending) {
+                        writes.add(ByteBuffer.wrap(pending.bytes()));
+                        committed = pending.lsn();
+                    } else if (entry instanceof Roll roll) {
+                        write(writes);
+                        roll(roll);
+                    }
+                }
+                write(writes);
+                segment.force(false);
+            } catch (IOException e) {
+                log.error("Catalog log write failed; rejecting further writes", e);
+                synchronized (lock) {
+                    failure = e;
+                    // rolls that will never run must not leave a loading caller waiting for their snapshot
+                    for (Object entry : batch) {
+                        if (entry instanceof Roll roll) {
+                            roll.written().completeExceptionally(e);
+                        }
+                    }
+                    for (Object entry : queue) {
+                        if (entry instanceof Roll roll) {
+                            roll.written().completeExceptionally(e);
+                        }
+                    }
+                    lock.notifyAll();
+                }
+                return;
+            }
+            synchronized (lock) {
+                durableLsn = Math.max(durableLsn, committed);
+                lock.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(List<ByteBuffer> writes) throws IOException {
+        ByteBuffer[] buffers = writes.toArray(ByteBuffer[]::new);
+        long remaining = writes.stream().mapToLong(ByteBuffer::remaining).sum();
+        while (remaining > 0) {
+            remaining -= segment.write(buffers);
+        }
+        writes.clear();
+    }
+
+    private void roll(Roll roll) throws IOException {
+        if (segmentFirstLsn != roll.lsn() + 1) {
+            segment.force(false);
+            segment.close();
+            segmentFirstLsn = roll.lsn() + 1;
+            segment = openSegment(directory, segmentFirstLsn);
+        }
+        snapshots.execute(() -> writeSnapshot(roll));
+    }
+
+    // SNAPSHOTS =================================================================================================
+
+    private void writeSnapshot(Roll roll) {
+        long start = System.nanoTime();
+        Path target = directory.resolve("snapshot-%020d.bin".formatted(roll.lsn()));
+        Path temp = directory.resolve("snapshot-%020d.tmp".formatted(roll.lsn()));
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+                CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(roll.lsn());
+                out.writeLong(roll.bookIdCounter());
+                out.writeLong(roll.authorIdCounter());
+                CatalogCodec.writeAuthors(out, roll.catalog().authors());
+                CatalogCodec.writeBooks(out, roll.catalog().books());
+                out.flush();
+                DataOutputStream trailer = new DataOutputStream(buffered);
+                trailer.writeInt((int) checked.getChecksum().getValue());
+                trailer.flush();
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // the rename must be on disk before the segments it replaces are deleted
+            syncDirectory(directory);
+            roll.written().complete(null);
+            for (Path file : files(directory, SEGMENT)) {
+                if (number(file, SEGMENT) <= roll.lsn()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            for (Path file : files(directory, SNAPSHOT)) {
+                if (number(file, SNAPSHOT) < roll.lsn()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            log.info("Wrote catalog snapshot at lsn {} ({} books) in {} ms", roll.lsn(), roll.catalog().books().size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            log.error("Catalog snapshot at lsn {} failed; the log is kept until the next one succeeds", roll.lsn(), e);
+            roll.written().completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+            snapshots.shutdown();
+            snapshots.awaitTermination(1, TimeUnit.MINUTES);
+            segment.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // FILES =====================================================================================================
+
+    // the new file's directory entry is forced too, so records acknowledged from it cannot vanish with it
+    private static FileChannel openSegment(Path directory, long firstLsn) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve("log-%020d.log".formatted(firstLsn)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        syncDirectory(directory);
+        return channel;
+    }
+
+    // makes creates and renames in the directory durable; Windows cannot open a directory, and its file systems
+    // keep metadata changes without it
+    private static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            log.debug("Cannot force directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    // sorted by the number in the file name
+    private static List<Path> files(Path directory, Pattern pattern) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> pattern.matcher(file.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong(file -> number(file, pattern)))
+                    .toList();
+        }
+    }
+
+    private static long number(Path file, Pattern pattern) {
+        Matcher matcher = pattern.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    // REPLAY STATE ==============================================================================================
+
+    // books only ever get ids above every existing one, so appending keeps the list in id order
+    private static final class Replay {
+
+        private List<Author> authors = new ArrayList<>();
+        private List<Book> books = new ArrayList<>();
+        private final LongMap<Author> authorsById = new LongMap<>(16);
+        private final LongMap<Boolean> deleted = new LongMap<>(16);
+        private long bookIdCounter;
+        private long authorIdCounter;
+        private long lastLsn;
+        private boolean restored;
+
+        void restore(DataInput snapshot, long lsn, long bookIdCounter, long authorIdCounter) throws IOException {
+            authors = CatalogCodec.readAuthors(snapshot);
+            for (Author author : authors) {
+                authorsById.put(author.id(), author);
+            }
+            books = CatalogCodec.readBooks(snapshot, authorsById::get);
+            this.bookIdCounter = bookIdCounter;
+            this.authorIdCounter = authorIdCounter;
+            this.lastLsn = lsn;
+            this.restored = true;
+        }
+
+        void apply(ByteBuffer payload, long lsn) {
+            for (Author author : CatalogCodec.readAuthors(payload)) {
+                authors.add(author);
+                authorsById.put(author.id(), author);
+                authorIdCounter = Math.max(authorIdCounter, author.id());
+            }
+            for (Book book : CatalogCodec.readBooks(payload, authorsById::get)) {
+                books.add(book);
+                bookIdCounter = Math.max(bookIdCounter, book.id());
+            }
+            for (long id : CatalogCodec.readIds(payload)) {
+                deleted.put(id, Boolean.TRUE);
+            }
+            lastLsn = lsn;
+        }
+
+        boolean empty() {
+            return !restored && lastLsn == 0;
+        }
+
+        Recovered result() {
+            List<Book> live = deleted.size() == 0 ? books
+                    : books.stream().filter(book -> deleted.get(book.id()) == null).toList();
+            return new Recovered(authors, live, bookIdCounter, authorIdCounter);
+        }
+    }
+
+}
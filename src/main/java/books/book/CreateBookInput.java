@@ -0,0 +1,4 @@
+package books.book;
+
+public record CreateBookInput(String title, String authorName, Integer publishedYear) {
+}
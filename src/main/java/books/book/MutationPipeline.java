@@ -0,0 +1,215 @@
+package books.book;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Write-behind path for {@code addBook} and {@code deleteBook}. Requests put their operation into a bounded ring
+ * buffer and wait on a future; a single writer thread drains whatever has queued up and applies it as one
+ * {@link BookRepository#apply} call (one catalog copy, one change event, one log record and fsync), then completes
+ * every caller in the batch. Writers never contend for the repository lock, and batches grow with the load.
+ * A batch that fails before it is committed is retried one operation at a time, so a bad input only fails its own
+ * caller. If the writer itself dies (an {@link Error} escaped a write), its batch and everything still queued fail
+ * instead of waiting forever, and later mutations are rejected. When disabled, operations are applied on the
+ * caller's thread as before.
+ */
+@Component
+public class MutationPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(MutationPipeline.class);
+
+    private sealed interface Operation permits AddBook, DeleteBook {
+    }
+
+    private record AddBook(CreateBookInput input, CompletableFuture<Book> result) implements Operation {
+    }
+
+    private record DeleteBook(Long id, CompletableFuture<Boolean> result) implements Operation {
+    }
+
+    // queued by close(); compared by identity and never applied
+    private static final Operation SHUTDOWN = new DeleteBook(null, new CompletableFuture<>());
+
+    private final BookRepository repository;
+    private final MutationPipelineProperties properties;
+    private final BlockingQueue<Operation> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+    // set once the writer thread has died; nothing will drain the queue after that
+    private volatile Throwable failure;
+
+    public MutationPipeline(BookRepository repository, MutationPipelineProperties properties) {
+        this.repository = repository;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.capacity());
+        this.writer = properties.enabled()
+                ? Thread.ofPlatform().daemon().name("book-writer").start(this::writeLoop)
+                : null;
+    }
+
+    public CompletableFuture<Book> addBook(String title, String authorName, Integer publishedYear) {
+        if (writer == null) {
+            Author author = repository.findAuthorByName(authorName);
+            return CompletableFuture.completedFuture(repository.createBook(title, author, publishedYear));
+        }
+        CompletableFuture<Book> result = new CompletableFuture<>();
+        enqueue(new AddBook(new CreateBookInput(title, authorName, publishedYear), result));
+        return result;
+    }
+
+    public CompletableFuture<Boolean> deleteBook(Long id) {
+        if (writer == null) {
+            return CompletableFuture.completedFuture(repository.deleteBookById(id));
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        enqueue(new DeleteBook(id, result));
+        return result;
+    }
+
+    // a full buffer parks the (virtual) request thread, which is the backpressure
+    private void enqueue(Operation operation) {
+        if (closed) {
+            throw new IllegalStateException("Mutation pipeline is closed");
+        }
+        if (failure != null) {
+            throw stopped(failure);
+        }
+        try {
+            queue.put(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        // the writer may have died after the check above and drained the queue before this put
+        if (failure != null) {
+            failQueued();
+        }
+    }
+
+    // the writer is never interrupted: it may be waiting for a committed batch to become durable, and its callers
+    // must still hear that it succeeded
+    private void writeLoop() {
+        List<Operation> batch = new ArrayList<>(properties.maxBatchSize());
+        try {
+            boolean running = true;
+            while (running) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(batch, properties.maxBatchSize() - 1);
+                running = !batch.removeIf(operation -> operation == SHUTDOWN);
+                apply(batch);
+                batch.clear();
+            }
+            // shutdown: whatever is still queued is applied rather than left hanging
+            while (queue.drainTo(batch, properties.maxBatchSize()) > 0) {
+                apply(batch);
+                batch.clear();
+            }
+        } catch (Throwable e) {
+            // only an Error gets here; apply() has failed what it could, this catches the rest of a retried batch
+            failure = e;
+            log.error("The mutation writer stopped, failing {} queued mutations", queue.size(), e);
+            fail(batch, e);
+            failQueued();
+            throw e;
+        }
+    }
+
+    private void apply(List<Operation> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<CreateBookInput> inputs = new ArrayList<>();
+        List<Long> deleteIds = new ArrayList<>();
+        for (Operation operation : batch) {
+            switch (operation) {
+                case AddBook add -> inputs.add(add.input());
+                case DeleteBook delete -> deleteIds.add(delete.id());
+            }
+        }
+        CatalogChange change;
+        long version = repository.dataVersion();
+        try {
+            change = repository.apply(inputs, deleteIds);
+        } catch (Throwable e) {
+            // nothing was committed, so each operation can be tried on its own; once the version moved the batch
+            // (or a concurrent direct write) may have landed, and a retry could apply it twice. An Error is not
+            // retried: it fails the batch and stops the writer.
+            if (e instanceof RuntimeException && batch.size() > 1 && repository.dataVersion() == version) {
+                log.warn("Applying a batch of {} mutations failed, retrying them one by one: {}", batch.size(),
+                        e.getMessage());
+                for (Operation operation : batch) {
+                    apply(List.of(operation));
+                }
+                return;
+            }
+            log.error("Applying a batch of {} mutations failed", batch.size(), e);
+            fail(batch, e);
+            if (e instanceof Error error) {
+                throw error;
+            }
+            return;
+        }
+
+        // the first request for an id that existed reports the delete, like a second deleteBook call would not
+        LongMap<Boolean> deleted = new LongMap<>(change.deletedBooks().size());
+        for (Book book : change.deletedBooks()) {
+            deleted.put(book.id(), Boolean.TRUE);
+        }
+        int next = 0;
+        for (Operation operation : batch) {
+            switch (operation) {
+                case AddBook add -> add.result().complete(change.addedBooks().get(next++));
+                case DeleteBook delete -> delete.result()
+                        .complete(delete.id() != null && deleted.remove(delete.id()) != null);
+            }
+        }
+    }
+
+    // completing an already completed future is a no-op, so a batch can be failed after part of it succeeded
+    private static void fail(List<Operation> operations, Throwable e) {
+        for (Operation operation : operations) {
+            switch (operation) {
+                case AddBook add -> add.result().completeExceptionally(e);
+                case DeleteBook delete -> delete.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    // may run on the dying writer and on request threads at once; drainTo hands each operation to one of them
+    private void failQueued() {
+        List<Operation> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        queued.removeIf(operation -> operation == SHUTDOWN);
+        fail(queued, stopped(failure));
+    }
+
+    private static IllegalStateException stopped(Throwable cause) {
+        return new IllegalStateException("Mutation writer has stopped", cause);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writer != null && failure == null) {
+            queue.put(SHUTDOWN);
+            writer.join();
+        }
+    }
+
+}
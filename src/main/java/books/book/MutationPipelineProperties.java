@@ -0,0 +1,13 @@
+package books.book;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("books.mutations.pipeline")
+public record MutationPipelineProperties(boolean enabled, int capacity, int maxBatchSize) {
+
+    public MutationPipelineProperties {
+        capacity = capacity > 0 ? capacity : 4096;
+        maxBatchSize = maxBatchSize > 0 ? maxBatchSize : 512;
+    }
+
+}
@@ -0,0 +1,412 @@
+package books.book;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+
+/**
+ * Immutable list that shares structure between versions: a B+-tree of small leaf arrays whose inner nodes keep
+ * the cumulative size of their children. {@link #with(int, Object)} and {@link #without(int)} copy only the path
+ * from the root to one leaf, so a write costs O(log n) and leaves every other node shared with the list it was
+ * called on. Readers holding an older version keep reading it unchanged, and nodes no version references any
+ * more are left to the GC.
+ */
+final class PersistentList<E> extends AbstractList<E> implements RandomAccess {
+
+    // most entries in a leaf and children in a branch; a node that drops below a quarter of it is merged
+    // into a neighbour when the two fit together
+    private static final int WIDTH = 64;
+    private static final int MIN_WIDTH = WIDTH / 4;
+    private static final Object[] NO_ITEMS = new Object[0];
+
+    private static final PersistentList<?> EMPTY = new PersistentList<>(new Leaf(NO_ITEMS));
+
+    private final Node root;
+
+    private PersistentList(Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> PersistentList<E> empty() {
+        return (PersistentList<E>) EMPTY;
+    }
+
+    // bulk build in O(n) from full leaves, for loads that replace the whole catalog
+    static <E> PersistentList<E> copyOf(List<? extends E> items) {
+        if (items.isEmpty()) {
+            return empty();
+        }
+        Object[] all = items.toArray();
+        Node[] level = new Node[(all.length + WIDTH - 1) / WIDTH];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = new Leaf(Arrays.copyOfRange(all, i * WIDTH, Math.min(all.length, (i + 1) * WIDTH)));
+        }
+        while (level.length > 1) {
+            Node[] parents = new Node[(level.length + WIDTH - 1) / WIDTH];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = Branch.of(Arrays.copyOfRange(level, i * WIDTH, Math.min(level.length, (i + 1) * WIDTH)));
+            }
+            level = parents;
+        }
+        return new PersistentList<>(level[0]);
+    }
+
+    @Override
+    public int size() {
+        return root.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, root.size());
+        Node node = root;
+        while (node instanceof Branch branch) {
+            int child = branch.childAt(index);
+            index -= branch.start(child);
+            node = branch.children[child];
+        }
+        return (E) ((Leaf) node).items[index];
+    }
+
+    // index of the first item for which before is false, in a list ordered so that before holds for a prefix;
+    // descends once, testing the first item of each child, instead of a full get() for every probe
+    @SuppressWarnings("unchecked")
+    int lowerBound(Predicate<? super E> before) {
+        Node node = root;
+        int base = 0;
+        while (node instanceof Branch branch) {
+            int low = 0;
+            int high = branch.children.length - 1;
+            int last = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (before.test((E) branch.children[mid].first())) {
+                    last = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (last < 0) {
+                return base;
+            }
+            base += branch.start(last);
+            node = branch.children[last];
+        }
+        Object[] items = ((Leaf) node).items;
+        int low = 0;
+        int high = items.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (before.test((E) items[mid])) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return base + low;
+    }
+
+    // WRITES ====================================================================================================
+
+    PersistentList<E> with(int index, E item) {
+        Objects.checkIndex(index, root.size() + 1);
+        Node[] result = root.with(index, item);
+        return new PersistentList<>(result.length == 1 ? result[0] : Branch.of(result));
+    }
+
+    PersistentList<E> without(int index) {
+        Objects.checkIndex(index, root.size());
+        Node result = root.without(index);
+        // a root left with a single child hands its place to that child, which keeps every leaf at the same depth
+        while (result instanceof Branch branch && branch.children.length == 1) {
+            result = branch.children[0];
+        }
+        return result.size() == 0 ? empty() : new PersistentList<>(result);
+    }
+
+    // VIEWS =====================================================================================================
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(0, size());
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(iterator(), size(),
+                Spliterator.ORDERED | Spliterator.SIZED | Spliterator.IMMUTABLE);
+    }
+
+    // ranges are views that walk leaf by leaf instead of descending from the root for every element
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size());
+        return new Range(fromIndex, toIndex);
+    }
+
+    private final class Range extends AbstractList<E> implements RandomAccess {
+
+        private final int from;
+        private final int to;
+
+        private Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public E get(int index) {
+            return PersistentList.this.get(from + Objects.checkIndex(index, to - from));
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Itr(from, to);
+        }
+
+        @Override
+        public List<E> subList(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, size());
+            return new Range(from + fromIndex, from + toIndex);
+        }
+    }
+
+    private final class Itr implements Iterator<E> {
+
+        private final int end;
+        private int next;
+        private Object[] leaf = NO_ITEMS;
+        // list index of the current leaf's first item
+        private int leafStart;
+
+        private Itr(int from, int end) {
+            this.next = from;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (next >= end) {
+                throw new NoSuchElementException();
+            }
+            if (next - leafStart >= leaf.length) {
+                seek(next);
+            }
+            return (E) leaf[next++ - leafStart];
+        }
+
+        private void seek(int index) {
+            Node node = root;
+            int start = 0;
+            while (node instanceof Branch branch) {
+                int child = branch.childAt(index - start);
+                start += branch.start(child);
+                node = branch.children[child];
+            }
+            leaf = ((Leaf) node).items;
+            leafStart = start;
+        }
+    }
+
+    // NODES =====================================================================================================
+
+    private abstract static sealed class Node permits Leaf, Branch {
+
+        abstract int size();
+
+        // entries in a leaf, children in a branch
+        abstract int width();
+
+        // one node, or two when the insert split it
+        abstract Node[] with(int index, Object item);
+
+        // may come back empty or below the minimum width; the parent merges or drops it
+        abstract Node without(int index);
+
+        abstract Node merge(Node right);
+
+        Object first() {
+            Node node = this;
+            while (node instanceof Branch branch) {
+                node = branch.children[0];
+            }
+            return ((Leaf) node).items[0];
+        }
+    }
+
+    private static final class Leaf extends Node {
+
+        private final Object[] items;
+
+        private Leaf(Object[] items) {
+            this.items = items;
+        }
+
+        @Override
+        int size() {
+            return items.length;
+        }
+
+        @Override
+        int width() {
+            return items.length;
+        }
+
+        @Override
+        Node[] with(int index, Object item) {
+            Object[] copy = new Object[items.length + 1];
+            System.arraycopy(items, 0, copy, 0, index);
+            copy[index] = item;
+            System.arraycopy(items, index, copy, index + 1, items.length - index);
+            if (copy.length <= WIDTH) {
+                return new Node[]{new Leaf(copy)};
+            }
+            // an append keeps the left leaf full, so a list built by appends stays densely packed
+            int half = index == items.length ? WIDTH : copy.length / 2;
+            return new Node[]{new Leaf(Arrays.copyOfRange(copy, 0, half)),
+                    new Leaf(Arrays.copyOfRange(copy, half, copy.length))};
+        }
+
+        @Override
+        Node without(int index) {
+            Object[] copy = new Object[items.length - 1];
+            System.arraycopy(items, 0, copy, 0, index);
+            System.arraycopy(items, index + 1, copy, index, copy.length - index);
+            return new Leaf(copy);
+        }
+
+        @Override
+        Node merge(Node right) {
+            Object[] other = ((Leaf) right).items;
+            Object[] merged = Arrays.copyOf(items, items.length + other.length);
+            System.arraycopy(other, 0, merged, items.length, other.length);
+            return new Leaf(merged);
+        }
+    }
+
+    private static final class Branch extends Node {
+
+        private final Node[] children;
+        // ends[i] is the number of items in children 0..i
+        private final int[] ends;
+
+        private Branch(Node[] children, int[] ends) {
+            this.children = children;
+            this.ends = ends;
+        }
+
+        static Branch of(Node[] children) {
+            int[] ends = new int[children.length];
+            int total = 0;
+            for (int i = 0; i < children.length; i++) {
+                total += children[i].size();
+                ends[i] = total;
+            }
+            return new Branch(children, ends);
+        }
+
+        @Override
+        int size() {
+            return ends[ends.length - 1];
+        }
+
+        @Override
+        int width() {
+            return children.length;
+        }
+
+        int start(int child) {
+            return child == 0 ? 0 : ends[child - 1];
+        }
+
+        // the child holding the item at index: the first whose end is above it
+        int childAt(int index) {
+            int low = 0;
+            int high = ends.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ends[mid] <= index) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        Node[] with(int index, Object item) {
+            // an index on a boundary goes to the end of the left child, so appends always land in the last one
+            int child = childAt(index);
+            if (child > 0 && index == ends[child - 1]) {
+                child--;
+            }
+            Node[] replaced = children[child].with(index - start(child), item);
+            Node[] copy = new Node[children.length + replaced.length - 1];
+            System.arraycopy(children, 0, copy, 0, child);
+            System.arraycopy(replaced, 0, copy, child, replaced.length);
+            System.arraycopy(children, child + 1, copy, child + replaced.length, children.length - child - 1);
+            if (copy.length <= WIDTH) {
+                return new Node[]{of(copy)};
+            }
+            int half = index == size() ? WIDTH : copy.length / 2;
+            return new Node[]{of(Arrays.copyOfRange(copy, 0, half)), of(Arrays.copyOfRange(copy, half, copy.length))};
+        }
+
+        @Override
+        Node without(int index) {
+            int child = childAt(index);
+            Node replaced = children[child].without(index - start(child));
+            if (replaced.size() == 0) {
+                return children.length == 1 ? new Leaf(NO_ITEMS) : of(remove(children, child));
+            }
+            Node[] copy = children.clone();
+            copy[child] = replaced;
+            if (replaced.width() < MIN_WIDTH && children.length > 1) {
+                int left = child > 0 ? child - 1 : child;
+                if (copy[left].width() + copy[left + 1].width() <= WIDTH) {
+                    copy[left] = copy[left].merge(copy[left + 1]);
+                    copy = remove(copy, left + 1);
+                }
+            }
+            return of(copy);
+        }
+
+        @Override
+        Node merge(Node right) {
+            Node[] other = ((Branch) right).children;
+            Node[] merged = Arrays.copyOf(children, children.length + other.length);
+            System.arraycopy(other, 0, merged, children.length, other.length);
+            return of(merged);
+        }
+
+        private static Node[] remove(Node[] nodes, int index) {
+            Node[] copy = new Node[nodes.length - 1];
+            System.arraycopy(nodes, 0, copy, 0, index);
+            System.arraycopy(nodes, index + 1, copy, index, copy.length - index);
+            return copy;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package books.book;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the catalog versions that pinned pagination cursors were issued from, so a client paging with
+ * {@code booksPaginated(pinned: true)} reads every page from the version of its first page however many writes
+ * land in between. A version stays retained while its cursors keep coming back and is released once it has been
+ * idle for the ttl, or when more than the maximum number of versions are pinned, least recently used first. A
+ * released version is reclaimed by the GC as soon as the last request reading it finishes.
+ * <p>
+ * A cursor whose version was released pages on from the request's own version, which keyset cursors allow, and
+ * pins that one instead.
+ */
+@Component
+public class PinnedSnapshots {
+
+    private final long ttlNanos;
+    private final int maxVersions;
+    // access ordered, so iteration starts at the least recently used version
+    private final LinkedHashMap<Long, Pin> pins = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static final class Pin {
+
+        private final CatalogSnapshot snapshot;
+        private long lastUsed;
+
+        private Pin(CatalogSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    public PinnedSnapshots(PinnedSnapshotsProperties properties) {
+        this.ttlNanos = properties.ttl().toNanos();
+        this.maxVersions = properties.maxVersions();
+    }
+
+    // cursor is the request's after or before argument, null for a first page; current is the version the
+    // request would read otherwise
+    public synchronized CatalogSnapshot pin(String cursor, CatalogSnapshot current) {
+        long now = System.nanoTime();
+        expire(now);
+        long version = cursor == null ? BookCursor.UNPINNED : BookCursor.version(cursor);
+        Pin pin = version == BookCursor.UNPINNED ? null : pins.get(version);
+        if (pin == null) {
+            pin = pins.get(current.version());
+        }
+        if (pin == null) {
+            pin = new Pin(current);
+            pins.put(current.version(), pin);
+            Iterator<Pin> oldest = pins.values().iterator();
+            while (pins.size() > maxVersions) {
+                oldest.next();
+                oldest.remove();
+            }
+        }
+        pin.lastUsed = now;
+        return pin.snapshot;
+    }
+
+    public synchronized int pinnedVersions() {
+        expire(System.nanoTime());
+        return pins.size();
+    }
+
+    private void expire(long now) {
+        Iterator<Map.Entry<Long, Pin>> entries = pins.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (now - entries.next().getValue().lastUsed < ttlNanos) {
+                return;
+            }
+            entries.remove();
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package books.book;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties("books.snapshots.pinned")
+public record PinnedSnapshotsProperties(Duration ttl, int maxVersions) {
+
+    public PinnedSnapshotsProperties {
+        ttl = ttl == null || !ttl.isPositive() ? Duration.ofMinutes(5) : ttl;
+        maxVersions = maxVersions > 0 ? maxVersions : 8;
+    }
+
+}
@@ -0,0 +1,219 @@
+package books.book;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The replica's side of replication: loads a snapshot from the primary, then long-polls its
+ * {@link ReplicationLog} and applies every change as one repository write, so subscriptions, caches and the
+ * local durable store see replicated changes exactly like local ones. Reads are served from the local catalog;
+ * writes are refused. When the primary no longer retains the changes the replica needs, or it was restarted,
+ * the replica catches up from a new snapshot.
+ * <p>
+ * Lag is reported as changes (the primary's newest lsn minus the last applied one) and, while the replica is
+ * behind, as the age of the newest change it has applied, which assumes the two clocks agree. Both are as of the
+ * last answer from the primary; {@link ReplicationStatus#connected()} tells whether that is still current.
+ */
+@Component
+public class ReplicaFollower {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaFollower.class);
+
+    static final String APPLIED_LSN = "books.replication.applied.lsn";
+    static final String LAG_CHANGES = "books.replication.lag.changes";
+    static final String LAG_SECONDS = "books.replication.lag.seconds";
+
+    private final BookRepository repository;
+    private final ReplicationProperties properties;
+    private final RestClient client;
+    private final Thread follower;
+    private final LongAdder snapshots = new LongAdder();
+    private volatile boolean closed;
+
+    // written by the follower thread only
+    private volatile long epoch;
+    private volatile long appliedLsn;
+    private volatile long primaryLsn;
+    private long appliedCommitMillis;
+    // commit time of the newest applied change while the primary has newer ones, 0 when caught up
+    private volatile long behindSinceMillis;
+    private volatile boolean connected;
+
+    public ReplicaFollower(BookRepository repository, ReplicationProperties properties, RestClient.Builder builder,
+                           MeterRegistry registry) {
+        this.repository = repository;
+        this.properties = properties;
+        if (properties.role() != ReplicationProperties.Role.REPLICA) {
+            this.client = null;
+            this.follower = null;
+            return;
+        }
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory();
+        requestFactory.setReadTimeout(properties.pollTimeout().plus(properties.pollTimeout()));
+        this.client = builder.baseUrl(properties.primaryUrl()).requestFactory(requestFactory).build();
+        repository.followPrimary();
+
+        Gauge.builder(APPLIED_LSN, this, f -> f.appliedLsn).register(registry);
+        Gauge.builder(LAG_CHANGES, this, f -> f.status().lagChanges()).register(registry);
+        Gauge.builder(LAG_SECONDS, this, f -> f.status().lagSeconds()).baseUnit("seconds").register(registry);
+
+        // one attempt while the context starts, so a replica that can reach its primary never serves its own
+        // seed data; otherwise the follower keeps retrying in the background
+        try {
+            loadSnapshot(fetchSnapshot());
+        } catch (RestClientException e) {
+            log.warn("Primary {} is not reachable yet, serving local data until it is: {}", properties.primaryUrl(),
+                    e.getMessage());
+        }
+        this.follower = Thread.ofVirtual().name("replica-follower").start(this::followLoop);
+    }
+
+    public ReplicationStatus status() {
+        long behindSince = behindSinceMillis;
+        double lagSeconds = behindSince == 0 ? 0 : Math.max(0, System.currentTimeMillis() - behindSince) / 1000.0;
+        return new ReplicationStatus(ReplicationProperties.Role.REPLICA, epoch, appliedLsn, primaryLsn, lagSeconds,
+                connected, snapshots.sum());
+    }
+
+    // FOLLOW ====================================================================================================
+
+    private void followLoop() {
+        while (!closed) {
+            try {
+                if (epoch == 0) {
+                    loadSnapshot(fetchSnapshot());
+                }
+                byte[] changes = client.get()
+                        .uri("/replication/log?epoch={epoch}&after={after}&max={max}&wait={wait}", epoch, appliedLsn,
+                                properties.maxBatchSize(), properties.pollTimeout().toMillis())
+                        .exchange((request, response) -> {
+                            if (response.getStatusCode().isSameCodeAs(HttpStatus.GONE)) {
+                                return null;
+                            }
+                            if (!response.getStatusCode().is2xxSuccessful()) {
+                                throw new RestClientException("Primary answered " + response.getStatusCode());
+                            }
+                            return response.bodyTo(byte[].class);
+                        });
+                if (changes == null) {
+                    log.info("Primary no longer has the changes after lsn {}; catching up from a snapshot", appliedLsn);
+                    epoch = 0;
+                    continue;
+                }
+                applyChanges(ByteBuffer.wrap(changes));
+            } catch (RuntimeException e) {
+                if (closed) {
+                    return;
+                }
+                if (connected) {
+                    log.warn("Lost the primary at {}: {}", properties.primaryUrl(), e.getMessage());
+                }
+                connected = false;
+                try {
+                    Thread.sleep(properties.retryDelay());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private byte[] fetchSnapshot() {
+        return client.get().uri("/replication/snapshot").retrieve().body(byte[].class);
+    }
+
+    // replaces the whole local catalog; see ReplicationLog for the format
+    void loadSnapshot(byte[] bytes) {
+        long start = System.nanoTime();
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        long snapshotEpoch = in.getLong();
+        long lsn = in.getLong();
+        List<Author> authors = CatalogCodec.readAuthors(in);
+        LongMap<Author> authorsById = new LongMap<>(authors.size());
+        for (Author author : authors) {
+            authorsById.put(author.id(), author);
+        }
+        List<Book> books = CatalogCodec.readBooks(in, authorsById::get);
+        repository.load(authors, books);
+
+        epoch = snapshotEpoch;
+        appliedLsn = lsn;
+        primaryLsn = lsn;
+        behindSinceMillis = 0;
+        connected = true;
+        snapshots.increment();
+        log.info("Loaded snapshot of {} authors and {} books at primary lsn {} in {} ms", authors.size(), books.size(),
+                lsn, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // applies a batch from the primary's log; a gap means the primary's history changed, so start over
+    void applyChanges(ByteBuffer in) {
+        long batchEpoch = in.getLong();
+        long newest = in.getLong();
+        int count = in.getInt();
+        if (batchEpoch != epoch) {
+            epoch = 0;
+            return;
+        }
+        connected = true;
+        primaryLsn = newest;
+        for (int i = 0; i < count; i++) {
+            long lsn = in.getLong();
+            long commitMillis = in.getLong();
+            int length = in.getInt();
+            ByteBuffer change = in.slice(in.position(), length);
+            in.position(in.position() + length);
+            if (lsn != appliedLsn + 1) {
+                log.warn("Expected lsn {} from the primary but got {}; catching up from a snapshot", appliedLsn + 1, lsn);
+                epoch = 0;
+                return;
+            }
+            try {
+                apply(change);
+            } catch (RuntimeException e) {
+                // retrying the same change would fail the same way
+                log.warn("Change {} from the primary does not apply: {}; catching up from a snapshot", lsn,
+                        e.getMessage());
+                epoch = 0;
+                return;
+            }
+            appliedLsn = lsn;
+            appliedCommitMillis = commitMillis;
+        }
+        behindSinceMillis = appliedLsn >= newest ? 0 : appliedCommitMillis;
+    }
+
+    private void apply(ByteBuffer change) {
+        List<Author> authors = CatalogCodec.readAuthors(change);
+        LongMap<Author> added = new LongMap<>(authors.size());
+        for (Author author : authors) {
+            added.put(author.id(), author);
+        }
+        List<Book> books = CatalogCodec.readBooks(change, id -> {
+            Author author = added.get(id);
+            return author != null ? author : repository.findAuthorById(id);
+        });
+        repository.replicate(authors, books, CatalogCodec.readIds(change));
+    }
+
+    @PreDestroy
+    void close() {
+        closed = true;
+        if (follower != null) {
+            follower.interrupt();
+        }
+    }
+
+}
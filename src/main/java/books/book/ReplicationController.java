@@ -0,0 +1,72 @@
+package books.book;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+
+/**
+ * HTTP endpoints between a primary and its replicas. The snapshot and log are only served by a primary; a 410
+ * from the log tells the replica to load a new snapshot. Every role reports its {@link ReplicationStatus}.
+ */
+@RestController
+@RequestMapping("/replication")
+public class ReplicationController {
+
+    private final ReplicationLog replicationLog;
+    private final ReplicaFollower replicaFollower;
+    private final ReplicationProperties properties;
+
+    public ReplicationController(ReplicationLog replicationLog, ReplicaFollower replicaFollower,
+                                 ReplicationProperties properties) {
+        this.replicationLog = replicationLog;
+        this.replicaFollower = replicaFollower;
+        this.properties = properties;
+    }
+
+    @GetMapping("/snapshot")
+    public ResponseEntity<StreamingResponseBody> snapshot() {
+        requirePrimary();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(replicationLog::writeSnapshot);
+    }
+
+    // long-polls for up to wait milliseconds, capped at the configured poll timeout
+    @GetMapping("/log")
+    public ResponseEntity<byte[]> log(@RequestParam long epoch, @RequestParam long after,
+                                      @RequestParam(defaultValue = "1000") int max,
+                                      @RequestParam(defaultValue = "0") long wait) {
+        requirePrimary();
+        Duration timeout = Duration.ofMillis(Math.max(0, Math.min(wait, properties.pollTimeout().toMillis())));
+        byte[] changes = replicationLog.changesAfter(epoch, after, Math.max(1, Math.min(max, properties.maxBatchSize())),
+                timeout);
+        if (changes == null) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(changes);
+    }
+
+    @GetMapping("/status")
+    public ReplicationStatus status() {
+        return switch (properties.role()) {
+            case PRIMARY -> replicationLog.status();
+            case REPLICA -> replicaFollower.status();
+            case NONE -> new ReplicationStatus(ReplicationProperties.Role.NONE, 0, 0, 0, 0, false, 0);
+        };
+    }
+
+    private void requirePrimary() {
+        if (!replicationLog.enabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "This instance is not a replication primary");
+        }
+    }
+
+}
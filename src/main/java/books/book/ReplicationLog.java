@@ -0,0 +1,158 @@
+package books.book;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The primary's side of replication: every repository change, numbered in commit order and encoded once with
+ * {@link CatalogCodec}, in a ring of the last {@code retainedChanges}. Replicas start from a snapshot and then
+ * long-poll for the changes after the last one they applied; a replica that fell behind the ring, or that
+ * followed an earlier run of the primary (another {@code epoch}), starts over from a new snapshot.
+ * <p>
+ * Wire format, all big-endian:
+ * <ul>
+ *     <li>snapshot: epoch, lsn, then the authors and books as written by {@link CatalogCodec}</li>
+ *     <li>log: epoch, the primary's newest lsn, a change count, then per change its lsn, commit time in epoch
+ *     millis, byte length and the {@link CatalogCodec#writeChange} bytes</li>
+ * </ul>
+ * A snapshot's catalog and lsn are read together under the repository write lock, so it holds exactly the changes
+ * up to its lsn and a replica applies every later change on top of it as is.
+ */
+@Component
+public class ReplicationLog {
+
+    static final String LSN = "books.replication.lsn";
+
+    private record Entry(long lsn, long commitMillis, byte[] change) {
+    }
+
+    private record Pinned(CatalogSnapshot snapshot, long lsn) {
+    }
+
+    private final BookRepository repository;
+    private final boolean enabled;
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final Entry[] ring;
+    private final LongAdder snapshots = new LongAdder();
+
+    // guarded by this
+    private long head;
+
+    public ReplicationLog(BookRepository repository, ReplicationProperties properties, MeterRegistry registry) {
+        this.repository = repository;
+        this.enabled = properties.role() == ReplicationProperties.Role.PRIMARY;
+        this.ring = new Entry[enabled ? properties.retainedChanges() : 0];
+        if (enabled) {
+            repository.addChangeListener(this::append);
+            Gauge.builder(LSN, this, log -> log.status().lsn()).register(registry);
+        }
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    // called under the repository write lock, so lsns follow commit order
+    private void append(CatalogChange change) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            CatalogCodec.writeChange(out, change);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (this) {
+            long lsn = ++head;
+            ring[(int) (lsn % ring.length)] = new Entry(lsn, System.currentTimeMillis(), bytes.toByteArray());
+            notifyAll();
+        }
+    }
+
+    public synchronized ReplicationStatus status() {
+        return new ReplicationStatus(ReplicationProperties.Role.PRIMARY, epoch, head, head, 0, true, snapshots.sum());
+    }
+
+    // SNAPSHOT ==================================================================================================
+
+    public void writeSnapshot(OutputStream stream) throws IOException {
+        // append() runs under the write lock too, so no change can land between the two reads
+        Pinned pinned = repository.snapshot(snapshot -> {
+            synchronized (this) {
+                return new Pinned(snapshot, head);
+            }
+        });
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeLong(epoch);
+        out.writeLong(pinned.lsn());
+        CatalogCodec.writeAuthors(out, pinned.snapshot().findAllAuthors());
+        CatalogCodec.writeBooks(out, pinned.snapshot().findAll());
+        out.flush();
+        snapshots.increment();
+    }
+
+    // LOG =======================================================================================================
+
+    // the changes after the given lsn, waiting up to wait for one to arrive; null when they are no longer
+    // retained or the replica followed another epoch, which it answers by loading a new snapshot
+    public byte[] changesAfter(long replicaEpoch, long after, int maxChanges, Duration wait) {
+        List<Entry> entries = new ArrayList<>();
+        long newest;
+        synchronized (this) {
+            long deadline = System.nanoTime() + wait.toNanos();
+            while (retained(replicaEpoch, after) && head == after) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (!retained(replicaEpoch, after)) {
+                return null;
+            }
+            for (long lsn = after + 1; lsn <= head && entries.size() < maxChanges; lsn++) {
+                entries.add(ring[(int) (lsn % ring.length)]);
+            }
+            newest = head;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(epoch);
+            out.writeLong(newest);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeLong(entry.lsn());
+                out.writeLong(entry.commitMillis());
+                out.writeInt(entry.change().length);
+                out.write(entry.change());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // guarded by this
+    private boolean retained(long replicaEpoch, long after) {
+        return replicaEpoch == epoch && after <= head && after >= head - ring.length;
+    }
+
+}
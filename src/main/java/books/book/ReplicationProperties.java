@@ -0,0 +1,27 @@
+package books.book;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties("books.replication")
+public record ReplicationProperties(Role role, String primaryUrl, int retainedChanges, int maxBatchSize,
+                                    Duration pollTimeout, Duration retryDelay) {
+
+    public ReplicationProperties {
+        role = role == null ? Role.NONE : role;
+        primaryUrl = primaryUrl == null || primaryUrl.isBlank() ? "http://localhost:8080" : primaryUrl;
+        retainedChanges = retainedChanges > 0 ? retainedChanges : 10_000;
+        maxBatchSize = maxBatchSize > 0 ? maxBatchSize : 1_000;
+        pollTimeout = pollTimeout == null || !pollTimeout.isPositive() ? Duration.ofSeconds(10) : pollTimeout;
+        retryDelay = retryDelay == null || !retryDelay.isPositive() ? Duration.ofSeconds(1) : retryDelay;
+    }
+
+    // PRIMARY keeps a log of its changes for replicas to read; REPLICA follows primaryUrl and refuses local writes
+    public enum Role {
+        NONE,
+        PRIMARY,
+        REPLICA
+    }
+
+}
@@ -0,0 +1,15 @@
+package books.book;
+
+/**
+ * Where an instance stands in replication. On a primary {@code lsn} and {@code primaryLsn} are both its newest
+ * change; on a replica {@code lsn} is the last change applied and {@code primaryLsn} the newest one the primary
+ * reported. {@code snapshots} counts snapshots served (primary) or loaded (replica).
+ */
+public record ReplicationStatus(ReplicationProperties.Role role, long epoch, long lsn, long primaryLsn,
+                                double lagSeconds, boolean connected, long snapshots) {
+
+    public long lagChanges() {
+        return Math.max(0, primaryLsn - lsn);
+    }
+
+}
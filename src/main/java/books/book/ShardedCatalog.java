@@ -0,0 +1,285 @@
+package books.book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * One catalog version split into shards by author id. Every shard is a complete {@link Catalog} over its own
+ * books, with all authors replicated into it, so a shard answers any read on its own and the results of all
+ * shards only have to be merged. A write replaces just the shards whose books it touches and shares the rest
+ * with the version before it. With a single shard every read goes straight to it and nothing is merged.
+ */
+final class ShardedCatalog {
+
+    private static final Comparator<Book> BY_ID = BookOrder.ID::compare;
+
+    private final Catalog[] shards;
+    final long version;
+
+    // computed on first use; racing readers at worst compute the same value twice
+    private List<Book> books;
+    private CatalogFootprint footprint;
+
+    private ShardedCatalog(Catalog[] shards, long version) {
+        this.shards = shards;
+        this.version = version;
+    }
+
+    static ShardedCatalog empty(int shardCount) {
+        Catalog[] shards = new Catalog[shardCount];
+        Arrays.fill(shards, Catalog.EMPTY);
+        return new ShardedCatalog(shards, 0);
+    }
+
+    static ShardedCatalog of(int shardCount, CatalogDataProperties.Storage storage, List<Author> authors,
+                             List<Book> books, long version) {
+        ShardedCatalog layout = empty(shardCount);
+        List<List<Book>> partitions = layout.partition(books);
+        Catalog[] shards = new Catalog[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = storage == CatalogDataProperties.Storage.COLUMNAR
+                    ? Catalog.columnar(authors, partitions.get(i), version)
+                    : Catalog.of(authors, partitions.get(i), version);
+        }
+        return new ShardedCatalog(shards, version);
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    Catalog shard(int index) {
+        return shards[index];
+    }
+
+    // books go to the shard of their author; books without one are spread by their own id
+    int shardOf(Book book) {
+        return shardOf(book, shards.length);
+    }
+
+    private int shardOf(long key) {
+        return shardOf(key, shards.length);
+    }
+
+    // also places books on the nodes of a partitioned deployment (CatalogDataProperties.Node)
+    static int shardOf(Book book, int count) {
+        return shardOf(book.author() == null ? book.id() : book.author().id(), count);
+    }
+
+    private static int shardOf(long key, int count) {
+        if (count == 1) {
+            return 0;
+        }
+        // Fibonacci hashing spreads sequential ids evenly over any shard count
+        return (int) (((key * 0x9E3779B97F4A7C15L) >>> 32) % count);
+    }
+
+    // the books of each shard, in the order they were given
+    List<List<Book>> partition(List<Book> books) {
+        if (shards.length == 1) {
+            return List.of(books);
+        }
+        List<List<Book>> partitions = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            partitions.add(new ArrayList<>(books.size() / shards.length + 1));
+        }
+        for (Book book : books) {
+            partitions.get(shardOf(book)).add(book);
+        }
+        return partitions;
+    }
+
+    // READS =====================================================================================================
+
+    // all books in id order
+    List<Book> books() {
+        if (shards.length == 1) {
+            return shards[0].books;
+        }
+        List<Book> result = books;
+        if (result == null) {
+            List<List<Book>> all = new ArrayList<>(shards.length);
+            for (Catalog shard : shards) {
+                all.add(shard.books);
+            }
+            books = result = Collections.unmodifiableList(merge(all, BY_ID, Integer.MAX_VALUE));
+        }
+        return result;
+    }
+
+    // books() without materializing it: a lazy merge of the shards in id order, O(shards) memory for any size
+    Iterator<Book> booksIterator() {
+        if (shards.length == 1) {
+            return shards[0].books.iterator();
+        }
+        List<List<Book>> all = new ArrayList<>(shards.length);
+        for (Catalog shard : shards) {
+            all.add(shard.books);
+        }
+        return mergeIterator(all, BY_ID);
+    }
+
+    // the id says nothing about the author, so every shard is asked until one has the book
+    Book book(long id) {
+        for (Catalog shard : shards) {
+            Book book = shard.book(id);
+            if (book != null) {
+                return book;
+            }
+        }
+        return null;
+    }
+
+    boolean containsBook(long id) {
+        for (Catalog shard : shards) {
+            if (shard.containsBook(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    List<Book> booksByAuthor(long authorId) {
+        return shards[shardOf(authorId)].booksByAuthor(authorId);
+    }
+
+    // authors are the same in every shard
+    List<Author> authors() {
+        return shards[0].authors;
+    }
+
+    LongMap<Author> authorsById() {
+        return shards[0].authorsById;
+    }
+
+    Author authorByName(String name) {
+        return shards[0].authorsByName.get(Catalog.nameKey(name));
+    }
+
+    CatalogFootprint footprint() {
+        CatalogFootprint result = footprint;
+        if (result == null) {
+            result = shards[0].footprint();
+            for (int i = 1; i < shards.length; i++) {
+                CatalogFootprint shard = shards[i].footprint();
+                result = new CatalogFootprint(result.storage(), result.books() + shard.books(),
+                        result.heapBytes() + shard.heapBytes(), result.offHeapBytes() + shard.offHeapBytes());
+            }
+            footprint = result;
+        }
+        return result;
+    }
+
+    // WRITES ====================================================================================================
+
+    // same contract as Catalog.withBooks: new ids above every existing one, in ascending order
+    ShardedCatalog withBooks(List<Book> added) {
+        if (added.isEmpty()) {
+            return this;
+        }
+        Catalog[] next = shards.clone();
+        List<List<Book>> partitions = partition(added);
+        for (int i = 0; i < next.length; i++) {
+            next[i] = next[i].withBooks(partitions.get(i));
+        }
+        return new ShardedCatalog(next, version + 1);
+    }
+
+    ShardedCatalog withoutBooks(List<Book> removed) {
+        if (removed.isEmpty()) {
+            return this;
+        }
+        Catalog[] next = shards.clone();
+        List<List<Book>> partitions = partition(removed);
+        for (int i = 0; i < next.length; i++) {
+            next[i] = next[i].withoutBooks(partitions.get(i));
+        }
+        return new ShardedCatalog(next, version + 1);
+    }
+
+    ShardedCatalog withAuthor(Author author) {
+        Catalog[] next = new Catalog[shards.length];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = shards[i].withAuthor(author);
+        }
+        return new ShardedCatalog(next, version + 1);
+    }
+
+    // MERGE =====================================================================================================
+
+    // k-way merge of lists that are each sorted by order, keeping the first limit elements; the lists come from
+    // different shards, so no two elements are equal
+    static <T> List<T> merge(List<? extends List<? extends T>> sorted, Comparator<? super T> order, int limit) {
+        if (sorted.size() == 1) {
+            List<? extends T> only = sorted.get(0);
+            return Collections.unmodifiableList(only.size() <= limit ? only : only.subList(0, limit));
+        }
+        long total = 0;
+        for (List<? extends T> list : sorted) {
+            total += list.size();
+        }
+        List<T> merged = new ArrayList<>((int) Math.min(limit, total));
+        Iterator<T> heads = mergeIterator(sorted, order);
+        while (merged.size() < limit && heads.hasNext()) {
+            merged.add(heads.next());
+        }
+        return merged;
+    }
+
+    // the same merge one element at a time, holding only the current head of each list
+    static <T> Iterator<T> mergeIterator(List<? extends List<? extends T>> sorted, Comparator<? super T> order) {
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>(Math.max(1, sorted.size()),
+                (a, b) -> order.compare(a.value, b.value));
+        for (List<? extends T> list : sorted) {
+            Iterator<? extends T> iterator = list.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head<>(iterator));
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                Head<T> head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                T value = head.value;
+                if (head.advance()) {
+                    heads.add(head);
+                }
+                return value;
+            }
+        };
+    }
+
+    private static final class Head<T> {
+
+        private final Iterator<? extends T> rest;
+        private T value;
+
+        private Head(Iterator<? extends T> rest) {
+            this.rest = rest;
+            this.value = rest.next();
+        }
+
+        private boolean advance() {
+            if (!rest.hasNext()) {
+                return false;
+            }
+            value = rest.next();
+            return true;
+        }
+    }
+
+}
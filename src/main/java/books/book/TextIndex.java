@@ -0,0 +1,362 @@
+package books.book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Trigram inverted index over one text field. Postings are immutable sorted id arrays swapped in
+ * atomically, so searches run without locks while the repository applies writes under its own lock.
+ * Candidates are verified against the stored normalized text, which makes the result exact.
+ * <p>
+ * The index only ever holds one catalog version's texts plus texts added for versions not yet published. Readers
+ * of an older version filter out the additions, but removed texts are gone for them, so every removal records the
+ * version it belongs to and {@link #covers} tells those readers to {@link #scan} their own version instead.
+ */
+final class TextIndex {
+
+    static final Comparator<Hit> ORDER = Comparator.comparingInt(Hit::score)
+            .thenComparingInt(Hit::length)
+            .thenComparingLong(Hit::id);
+
+    private static final int GRAM = 3;
+    private static final long[] NO_IDS = new long[0];
+
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int WORD_PREFIX = 2;
+    private static final int SUBSTRING = 3;
+
+    private volatile Map<Long, String> texts = new ConcurrentHashMap<>();
+    private volatile Map<Long, long[]> postings = new ConcurrentHashMap<>();
+    // the newest catalog version whose write removed or replaced texts; set before the postings change
+    private volatile long removedIn;
+
+    record Hit(long id, int score, int length) {}
+
+    static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    void add(long id, String text) {
+        String normalized = normalize(text);
+        texts.put(id, normalized);
+        for (long gram : grams(normalized)) {
+            postings.compute(gram, (key, ids) -> insert(ids == null ? NO_IDS : ids, id));
+        }
+    }
+
+    // batch write: ids are grouped per trigram first, so each posting list is copied once per batch
+    <T> void addAll(List<T> documents, ToLongFunction<T> idOf, Function<T, String> textOf) {
+        LongMap<IdBuffer> buffers = new LongMap<>();
+        List<Long> gramKeys = new ArrayList<>();
+        for (T document : documents) {
+            long id = idOf.applyAsLong(document);
+            String normalized = normalize(textOf.apply(document));
+            texts.put(id, normalized);
+            collect(buffers, gramKeys, id, normalized);
+        }
+        for (Long gram : gramKeys) {
+            long[] added = buffers.get(gram).toSortedArray();
+            postings.compute(gram, (key, ids) -> union(ids == null ? NO_IDS : ids, added));
+        }
+    }
+
+    // version: the catalog version that no longer has the ids
+    void removeAll(long[] ids, long version) {
+        if (ids.length == 0) {
+            return;
+        }
+        removedIn = version;
+        LongMap<IdBuffer> buffers = new LongMap<>();
+        List<Long> gramKeys = new ArrayList<>();
+        for (long id : ids) {
+            String normalized = texts.remove(id);
+            if (normalized != null) {
+                collect(buffers, gramKeys, id, normalized);
+            }
+        }
+        for (Long gram : gramKeys) {
+            long[] removed = buffers.get(gram).toSortedArray();
+            postings.computeIfPresent(gram, (key, existing) -> {
+                long[] remaining = difference(existing, removed);
+                return remaining.length == 0 ? null : remaining;
+            });
+        }
+    }
+
+    // bulk build: postings are collected per gram and sorted once, then swapped in as a whole
+    <T> void rebuild(List<T> documents, ToLongFunction<T> idOf, Function<T, String> textOf, long version) {
+        Map<Long, String> newTexts = new ConcurrentHashMap<>(documents.size() * 2);
+        LongMap<IdBuffer> buffers = new LongMap<>();
+        List<Long> gramKeys = new ArrayList<>();
+        for (T document : documents) {
+            long id = idOf.applyAsLong(document);
+            String normalized = normalize(textOf.apply(document));
+            newTexts.put(id, normalized);
+            collect(buffers, gramKeys, id, normalized);
+        }
+        Map<Long, long[]> newPostings = new ConcurrentHashMap<>(gramKeys.size() * 2);
+        for (Long gram : gramKeys) {
+            newPostings.put(gram, buffers.get(gram).toSortedArray());
+        }
+
+        removedIn = version;
+        texts = newTexts;
+        postings = newPostings;
+    }
+
+    void remove(long id, long version) {
+        removedIn = version;
+        String normalized = texts.remove(id);
+        if (normalized == null) {
+            return;
+        }
+        for (long gram : grams(normalized)) {
+            postings.computeIfPresent(gram, (key, ids) -> {
+                long[] remaining = delete(ids, id);
+                return remaining.length == 0 ? null : remaining;
+            });
+        }
+    }
+
+    // true when every text of the given version is still indexed. Check it after reading the index: a removal
+    // that the read may have seen is then always visible here.
+    boolean covers(long version) {
+        return removedIn <= version;
+    }
+
+    List<Hit> search(String query, int limit, LongPredicate live) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, ORDER.reversed());
+        if (query.length() < GRAM) {
+            // too short for a trigram, but the scan only touches pre-normalized strings
+            texts.forEach((id, text) -> offer(top, limit, id, text, query, live));
+        } else {
+            for (long id : candidates(query)) {
+                String text = texts.get(id);
+                if (text != null) {
+                    offer(top, limit, id, text, query, live);
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(ORDER);
+        return hits;
+    }
+
+    // every live id whose text contains the query, in ascending order
+    long[] matchingIds(String query, LongPredicate live) {
+        long[] ids;
+        if (query.length() < GRAM) {
+            ids = texts.entrySet().stream()
+                    .filter(entry -> entry.getValue().contains(query))
+                    .mapToLong(Map.Entry::getKey)
+                    .sorted()
+                    .toArray();
+        } else {
+            ids = Arrays.stream(candidates(query))
+                    .filter(id -> {
+                        String text = texts.get(id);
+                        return text != null && text.contains(query);
+                    })
+                    .toArray();
+        }
+        return Arrays.stream(ids).filter(live).toArray();
+    }
+
+    // search() without the index, over the documents of a version the index no longer covers
+    static <T> List<Hit> scan(List<T> documents, ToLongFunction<T> idOf, Function<T, String> textOf, String query,
+                              int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, ORDER.reversed());
+        for (T document : documents) {
+            offer(top, limit, idOf.applyAsLong(document), normalize(textOf.apply(document)), query, id -> true);
+        }
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(ORDER);
+        return hits;
+    }
+
+    // matchingIds() without the index
+    static <T> long[] scanMatchingIds(List<T> documents, ToLongFunction<T> idOf, Function<T, String> textOf,
+                                      String query) {
+        return documents.stream()
+                .filter(document -> normalize(textOf.apply(document)).contains(query))
+                .mapToLong(idOf)
+                .sorted()
+                .toArray();
+    }
+
+    // the rarest trigram of the query bounds the work; verification handles the rest
+    private long[] candidates(String query) {
+        long[] smallest = null;
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            long[] ids = postings.get(gram(query, i));
+            if (ids == null) {
+                return NO_IDS;
+            }
+            if (smallest == null || ids.length < smallest.length) {
+                smallest = ids;
+            }
+        }
+        return smallest;
+    }
+
+    private static void offer(PriorityQueue<Hit> top, int limit, long id, String text, String query, LongPredicate live) {
+        int score = score(text, query);
+        if (score < 0 || !live.test(id)) {
+            return;
+        }
+        Hit hit = new Hit(id, score, text.length());
+        if (top.size() < limit) {
+            top.add(hit);
+        } else if (ORDER.compare(hit, top.peek()) < 0) {
+            top.poll();
+            top.add(hit);
+        }
+    }
+
+    private static int score(String text, String query) {
+        if (text.equals(query)) {
+            return EXACT;
+        }
+        if (text.startsWith(query)) {
+            return PREFIX;
+        }
+        int index = text.indexOf(query);
+        if (index < 0) {
+            return -1;
+        }
+        for (; index >= 0; index = text.indexOf(query, index + 1)) {
+            if (!Character.isLetterOrDigit(text.charAt(index - 1))) {
+                return WORD_PREFIX;
+            }
+        }
+        return SUBSTRING;
+    }
+
+    private static final class IdBuffer {
+
+        private long[] ids = new long[4];
+        private int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+    }
+
+    // distinct trigrams of the text, without boxing
+    private static long[] grams(String text) {
+        int count = Math.max(0, text.length() - GRAM + 1);
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++) {
+            grams[i] = gram(text, i);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return distinct == count ? grams : Arrays.copyOf(grams, distinct);
+    }
+
+    private static long gram(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    private static void collect(LongMap<IdBuffer> buffers, List<Long> gramKeys, long id, String normalized) {
+        for (long gram : grams(normalized)) {
+            IdBuffer buffer = buffers.get(gram);
+            if (buffer == null) {
+                buffer = new IdBuffer();
+                buffers.put(gram, buffer);
+                gramKeys.add(gram);
+            }
+            buffer.add(id);
+        }
+    }
+
+    // both arrays sorted; ids present in both are kept once
+    private static long[] union(long[] ids, long[] added) {
+        long[] merged = new long[ids.length + added.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < ids.length || j < added.length) {
+            if (j == added.length || (i < ids.length && ids[i] < added[j])) {
+                merged[k++] = ids[i++];
+            } else if (i == ids.length || added[j] < ids[i]) {
+                merged[k++] = added[j++];
+            } else {
+                merged[k++] = ids[i++];
+                j++;
+            }
+        }
+        return k == merged.length ? merged : Arrays.copyOf(merged, k);
+    }
+
+    private static long[] difference(long[] ids, long[] removed) {
+        long[] remaining = new long[ids.length];
+        int j = 0;
+        int k = 0;
+        for (long id : ids) {
+            while (j < removed.length && removed[j] < id) {
+                j++;
+            }
+            if (j == removed.length || removed[j] != id) {
+                remaining[k++] = id;
+            }
+        }
+        return k == remaining.length ? ids : Arrays.copyOf(remaining, k);
+    }
+
+    private static long[] insert(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        int at = -index - 1;
+        long[] copy = new long[ids.length + 1];
+        System.arraycopy(ids, 0, copy, 0, at);
+        copy[at] = id;
+        System.arraycopy(ids, at, copy, at + 1, ids.length - at);
+        return copy;
+    }
+
+    private static long[] delete(long[] ids, long id) {
+        int at = Arrays.binarySearch(ids, id);
+        if (at < 0) {
+            return ids;
+        }
+        long[] copy = new long[ids.length - 1];
+        System.arraycopy(ids, 0, copy, 0, at);
+        System.arraycopy(ids, at + 1, copy, at, ids.length - at - 1);
+        return copy;
+    }
+
+}
@@ -0,0 +1,136 @@
+package books.book;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only off-heap store of deduplicated UTF-8 strings, addressed by a {@code long} reference
+ * (chunk index in the high half, offset in the low half). Each entry is an int length followed by its bytes.
+ * <p>
+ * Only the writer appends; a reader only follows references from a catalog published after the append, so
+ * bytes are never read while they are being written. Chunks come from {@link Arena#ofAuto()} and are freed
+ * by the GC once no catalog references the arena, so a reader holding an old snapshot never sees freed memory.
+ */
+final class TitleArena {
+
+    static final long NULL = -1;
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final ValueLayout.OfInt LENGTH = ValueLayout.JAVA_INT_UNALIGNED;
+
+    private volatile MemorySegment[] chunks = new MemorySegment[0];
+    private MemorySegment current;
+    private int position;
+    private long usedBytes;
+    private long allocatedBytes;
+
+    // writer only: open-addressing set of references, probed by the hash of the UTF-8 bytes
+    private long[] table = new long[1024];
+    private int distinct;
+
+    long add(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int mask = table.length - 1;
+        int i = hash(bytes) & mask;
+        long ref;
+        while ((ref = table[i]) != 0) {
+            if (equals(ref - 1, bytes)) {
+                return ref - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        ref = append(bytes);
+        table[i] = ref + 1;
+        if (++distinct * 2 > table.length) {
+            rehash();
+        }
+        return ref;
+    }
+
+    String get(long ref) {
+        if (ref == NULL) {
+            return null;
+        }
+        MemorySegment chunk = chunks[(int) (ref >>> 32)];
+        long offset = ref & 0xFFFF_FFFFL;
+        byte[] bytes = new byte[chunk.get(LENGTH, offset)];
+        MemorySegment.copy(chunk, ValueLayout.JAVA_BYTE, offset + Integer.BYTES, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int distinct() {
+        return distinct;
+    }
+
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    long tableBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    private long append(byte[] bytes) {
+        int size = Integer.BYTES + bytes.length;
+        if (current == null || current.byteSize() - position < size) {
+            // titles longer than a chunk get a chunk of their own
+            current = Arena.ofAuto().allocate(Math.max(CHUNK_SIZE, size));
+            position = 0;
+            allocatedBytes += current.byteSize();
+            MemorySegment[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[grown.length - 1] = current;
+            chunks = grown;
+        }
+        long ref = ((long) (chunks.length - 1) << 32) | position;
+        current.set(LENGTH, position, bytes.length);
+        MemorySegment.copy(bytes, 0, current, ValueLayout.JAVA_BYTE, position + Integer.BYTES, bytes.length);
+        position += size;
+        usedBytes += size;
+        return ref;
+    }
+
+    private boolean equals(long ref, byte[] bytes) {
+        MemorySegment chunk = chunks[(int) (ref >>> 32)];
+        long offset = ref & 0xFFFF_FFFFL;
+        return chunk.get(LENGTH, offset) == bytes.length
+                && MemorySegment.mismatch(chunk, offset + Integer.BYTES, offset + Integer.BYTES + bytes.length,
+                MemorySegment.ofArray(bytes), 0, bytes.length) == -1;
+    }
+
+    private void rehash() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+        for (long ref : old) {
+            if (ref != 0) {
+                int i = hash(bytes(ref - 1)) & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = ref;
+            }
+        }
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = Arrays.hashCode(bytes);
+        return h ^ (h >>> 16);
+    }
+
+    private byte[] bytes(long ref) {
+        MemorySegment chunk = chunks[(int) (ref >>> 32)];
+        long offset = ref & 0xFFFF_FFFFL;
+        return chunk.asSlice(offset + Integer.BYTES, chunk.get(LENGTH, offset)).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+}
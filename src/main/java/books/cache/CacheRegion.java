@@ -0,0 +1,113 @@
+package books.cache;
+
+import books.book.CatalogChange;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * One operation's slice of the query cache: an access-ordered LRU bounded by size and TTL. Entries are
+ * dropped when a {@link CatalogChange} affects their key, and a load that raced with such a change is
+ * not stored, so a stale result can never outlive the write that made it stale. Loaders that read a pinned
+ * catalog version only use the region while that version is still the current one.
+ */
+public final class CacheRegion<K, V> {
+
+    private static final Object NULL = new Object();
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final BiPredicate<K, CatalogChange> affectedBy;
+    private final LinkedHashMap<K, Entry> entries;
+
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    private record Entry(Object value, long expiresAt) {}
+
+    CacheRegion(String name, QueryCacheProperties.Operation config, BiPredicate<K, CatalogChange> affectedBy) {
+        this.name = name;
+        this.maxSize = config.enabled() ? config.maxSize() : 0;
+        this.ttlNanos = config.ttl().toNanos();
+        this.affectedBy = affectedBy;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+                if (size() > CacheRegion.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public V get(K key, Supplier<V> loader) {
+        return get(key, () -> true, loader);
+    }
+
+    // current tells whether the version the loader reads is still the latest; an older one neither hits nor fills
+    // the region. It is checked again after the load generation is taken: any write after that bumps the generation,
+    // so a version that was current then cannot leave a stale entry behind.
+    @SuppressWarnings("unchecked")
+    public V get(K key, BooleanSupplier current, Supplier<V> loader) {
+        if (maxSize == 0 || !current.getAsBoolean()) {
+            return loader.get();
+        }
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt() - System.nanoTime() > 0) {
+                    hits++;
+                    return entry.value() == NULL ? null : (V) entry.value();
+                }
+                entries.remove(key);
+                expirations++;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        if (!current.getAsBoolean()) {
+            return loader.get();
+        }
+
+        V value = loader.get();
+
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry(value == null ? NULL : value, System.nanoTime() + ttlNanos));
+            }
+        }
+        return value;
+    }
+
+    synchronized void onChange(CatalogChange change) {
+        generation++;
+        Iterator<K> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (affectedBy.test(keys.next(), change)) {
+                keys.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(entries.size(), maxSize, hits, misses, evictions, expirations, invalidations);
+    }
+
+}
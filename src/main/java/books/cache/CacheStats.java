@@ -0,0 +1,5 @@
+package books.cache;
+
+public record CacheStats(int size, int maxSize, long hits, long misses, long evictions, long expirations,
+                         long invalidations) {
+}
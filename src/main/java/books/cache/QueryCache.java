@@ -0,0 +1,42 @@
+package books.cache;
+
+import books.book.BookRepository;
+import books.book.CatalogChange;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+
+@Component
+public class QueryCache {
+
+    private final QueryCacheProperties properties;
+    private final Map<String, CacheRegion<?, ?>> regions = new ConcurrentHashMap<>();
+
+    public QueryCache(QueryCacheProperties properties, BookRepository bookRepository) {
+        this.properties = properties;
+        bookRepository.addChangeListener(this::onChange);
+    }
+
+    // affectedBy decides, per cached key, whether a repository write could change that key's result
+    public <K, V> CacheRegion<K, V> region(String operation, BiPredicate<K, CatalogChange> affectedBy) {
+        CacheRegion<K, V> region = new CacheRegion<>(operation, properties.operation(operation), affectedBy);
+        if (regions.putIfAbsent(operation, region) != null) {
+            throw new IllegalStateException("Cache region already registered: " + operation);
+        }
+        return region;
+    }
+
+    public Map<String, CacheStats> stats() {
+        Map<String, CacheStats> stats = new TreeMap<>();
+        regions.forEach((name, region) -> stats.put(name, region.stats()));
+        return stats;
+    }
+
+    private void onChange(CatalogChange change) {
+        regions.values().forEach(region -> region.onChange(change));
+    }
+
+}
@@ -0,0 +1,24 @@
+package books.cache;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/cache")
+public class QueryCacheController {
+
+    private final QueryCache queryCache;
+
+    public QueryCacheController(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    @GetMapping("/stats")
+    public Map<String, CacheStats> stats() {
+        return queryCache.stats();
+    }
+
+}
@@ -0,0 +1,33 @@
+package books.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Map;
+
+@ConfigurationProperties("books.cache")
+public record QueryCacheProperties(Map<String, Operation> operations) {
+
+    public QueryCacheProperties {
+        operations = operations == null ? Map.of() : Map.copyOf(operations);
+    }
+
+    public Operation operation(String name) {
+        return operations.getOrDefault(name, Operation.DISABLED);
+    }
+
+    public record Operation(int maxSize, Duration ttl) {
+
+        static final Operation DISABLED = new Operation(0, Duration.ZERO);
+
+        public Operation {
+            ttl = ttl == null ? Duration.ZERO : ttl;
+        }
+
+        boolean enabled() {
+            return maxSize > 0 && ttl.isPositive();
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package books.graphql;
+
+import books.book.BookRepository;
+import books.book.CatalogSnapshot;
+import graphql.ExecutionResult;
+import graphql.GraphQLContext;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.language.OperationDefinition;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pins the catalog version a query reads. When a query operation starts, the repository's current
+ * {@link CatalogSnapshot} goes into the GraphQL context, and every resolver and batch loader of the request reads
+ * that one version, however many writes are published while the query runs. Mutations are not pinned, so their
+ * selections see the write they just made.
+ */
+@Component
+public class CatalogSnapshotInstrumentation extends SimplePerformantInstrumentation {
+
+    public static final String SNAPSHOT = "books.catalogSnapshot";
+
+    private final BookRepository repository;
+
+    public CatalogSnapshotInstrumentation(BookRepository repository) {
+        this.repository = repository;
+    }
+
+    // the version pinned for this request, or null outside a query
+    public static CatalogSnapshot pinned(GraphQLContext context) {
+        return context == null ? null : context.get(SNAPSHOT);
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters,
+                                                                         InstrumentationState state) {
+        ExecutionContext context = parameters.getExecutionContext();
+        if (context.getOperationDefinition().getOperation() == OperationDefinition.Operation.QUERY) {
+            context.getGraphQLContext().put(SNAPSHOT, repository.snapshot());
+        }
+        return SimpleInstrumentationContext.noOp();
+    }
+
+}
@@ -0,0 +1,29 @@
+package books.graphql;
+
+import org.springframework.graphql.server.WebGraphQlInterceptor;
+import org.springframework.graphql.server.WebGraphQlRequest;
+import org.springframework.graphql.server.WebGraphQlResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+// copies the debug header into the GraphQL context, where instrumentation can see it
+@Component
+public class DebugHeaderInterceptor implements WebGraphQlInterceptor {
+
+    public static final String TRACE = DebugHeaderInterceptor.class.getName() + ".trace";
+
+    private final String header;
+
+    public DebugHeaderInterceptor(ResolverMetricsProperties properties) {
+        this.header = properties.debugHeader();
+    }
+
+    @Override
+    public Mono<WebGraphQlResponse> intercept(WebGraphQlRequest request, Chain chain) {
+        if ("true".equalsIgnoreCase(request.getHeaders().getFirst(header))) {
+            request.configureExecutionInput((input, builder) -> builder.graphQLContext(context -> context.put(TRACE, true)).build());
+        }
+        return chain.next(request);
+    }
+
+}
@@ -0,0 +1,15 @@
+package books.graphql;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties("books.graphql.parallel")
+public record ParallelExecutionProperties(boolean enabled, Duration timeout, int maxFanOut) {
+
+    public ParallelExecutionProperties {
+        timeout = timeout == null ? Duration.ofSeconds(10) : timeout;
+        maxFanOut = maxFanOut > 0 ? maxFanOut : 32;
+    }
+
+}
@@ -0,0 +1,92 @@
+package books.graphql;
+
+import graphql.ExecutionResult;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.language.OperationDefinition;
+import graphql.schema.DataFetcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.ReactiveAdapterRegistry;
+import org.springframework.core.annotation.Order;
+import org.springframework.graphql.execution.SelfDescribingDataFetcher;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Predicate;
+
+/**
+ * Resolves the independent fields of a query in parallel. graphql-java already waits on every field of a level
+ * together, so forking each blocking resolver onto the request's {@link ResolverScope} is enough for a level to
+ * take as long as its slowest fetch. Async resolvers, including DataLoader-backed ones, are called in place so
+ * their loads are registered before the level is dispatched; trivial property fetchers are left untouched.
+ * Mutations keep their serial order and subscriptions are not scoped. Ordered first so that it wraps the
+ * controller's own data fetcher, before any other instrumentation hides its return type.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ParallelResolverInstrumentation extends SimplePerformantInstrumentation {
+
+    private final ParallelExecutionProperties properties;
+    private final Predicate<DataFetcher<?>> blocking;
+
+    @Autowired
+    public ParallelResolverInstrumentation(ParallelExecutionProperties properties) {
+        this(properties, ParallelResolverInstrumentation::isBlockingController);
+    }
+
+    public ParallelResolverInstrumentation(ParallelExecutionProperties properties, Predicate<DataFetcher<?>> blocking) {
+        this.properties = properties;
+        this.blocking = blocking;
+    }
+
+    @Override
+    public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+        return properties.enabled() ? new ScopeState() : null;
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters,
+                                                                         InstrumentationState state) {
+        if (!(state instanceof ScopeState scopeState)
+                || parameters.getExecutionContext().getOperationDefinition().getOperation() != OperationDefinition.Operation.QUERY) {
+            return null;
+        }
+        ResolverScope scope = new ResolverScope(properties.timeout().toNanos(), properties.maxFanOut());
+        scopeState.scope = scope;
+        return SimpleInstrumentationContext.whenCompleted((result, error) -> scope.close());
+    }
+
+    @Override
+    public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters,
+                                                InstrumentationState state) {
+        if (!(state instanceof ScopeState scopeState) || scopeState.scope == null || parameters.isTrivialDataFetcher()) {
+            return dataFetcher;
+        }
+        ResolverScope scope = scopeState.scope;
+        boolean fork = blocking.test(dataFetcher);
+        return environment -> scope.fetch(dataFetcher, environment, fork);
+    }
+
+    // annotated controller methods describe their return type; anything already asynchronous is not forked
+    public static boolean isBlockingController(DataFetcher<?> dataFetcher) {
+        if (!(dataFetcher instanceof SelfDescribingDataFetcher<?> described)) {
+            return false;
+        }
+        Class<?> type = described.getReturnType().resolve(Object.class);
+        return !CompletionStage.class.isAssignableFrom(type)
+                && !Callable.class.isAssignableFrom(type)
+                && ReactiveAdapterRegistry.getSharedInstance().getAdapter(type) == null;
+    }
+
+    private static final class ScopeState implements InstrumentationState {
+        private volatile ResolverScope scope;
+    }
+
+}
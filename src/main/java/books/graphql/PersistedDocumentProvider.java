@@ -0,0 +1,112 @@
+package books.graphql;
+
+import graphql.ExecutionInput;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Automatic persisted queries plus an LRU of parsed and validated documents keyed by SHA-256.
+ * A client may send only {@code extensions.persistedQuery.sha256Hash}; when the hash is unknown it gets
+ * a {@code PersistedQueryNotFound} error and retries with the full text, which is then cached.
+ * Requests without a hash share the same cache, keyed by the hash of their text. Over HTTP, Spring GraphQL passes
+ * graphql-java's {@link PersistedQuerySupport#PERSISTED_QUERY_MARKER} in place of an absent query, which counts
+ * as no text.
+ */
+@Component
+public class PersistedDocumentProvider implements PreparsedDocumentProvider {
+
+    static final String NOT_FOUND = "PersistedQueryNotFound";
+    static final String ID_INVALID = "PersistedQueryIdInvalid";
+
+    private final Map<String, PreparsedDocumentEntry> documents;
+
+    public PersistedDocumentProvider(@Value("${books.graphql.document-cache.max-size:1000}") int maxSize) {
+        this.documents = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparsedDocumentEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput,
+            Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        String query = PersistedQuerySupport.PERSISTED_QUERY_MARKER.equals(executionInput.getQuery())
+                ? null : executionInput.getQuery();
+        String hash = persistedQueryHash(executionInput);
+
+        if (hash == null) {
+            if (!StringUtils.hasText(query)) {
+                return CompletableFuture.completedFuture(parseAndValidateFunction.apply(executionInput));
+            }
+            hash = sha256(query);
+        } else if (!StringUtils.hasText(query)) {
+            PreparsedDocumentEntry entry = lookup(hash);
+            return CompletableFuture.completedFuture(entry != null ? entry : error(NOT_FOUND, hash));
+        } else if (!hash.equalsIgnoreCase(sha256(query))) {
+            return CompletableFuture.completedFuture(error(ID_INVALID, hash));
+        }
+
+        PreparsedDocumentEntry entry = lookup(hash);
+        if (entry == null) {
+            entry = parseAndValidateFunction.apply(executionInput);
+            if (!entry.hasErrors()) {
+                store(hash, entry);
+            }
+        }
+        return CompletableFuture.completedFuture(entry);
+    }
+
+    public static String sha256(String query) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private synchronized PreparsedDocumentEntry lookup(String hash) {
+        return documents.get(hash.toLowerCase(Locale.ROOT));
+    }
+
+    private synchronized void store(String hash, PreparsedDocumentEntry entry) {
+        documents.put(hash.toLowerCase(Locale.ROOT), entry);
+    }
+
+    private static String persistedQueryHash(ExecutionInput executionInput) {
+        Map<String, Object> extensions = executionInput.getExtensions();
+        if (extensions != null && extensions.get("persistedQuery") instanceof Map<?, ?> persistedQuery
+                && persistedQuery.get("sha256Hash") instanceof String hash && !hash.isBlank()) {
+            return hash;
+        }
+        return null;
+    }
+
+    private static PreparsedDocumentEntry error(String message, String hash) {
+        GraphQLError error = GraphqlErrorBuilder.newError()
+                .message(message)
+                .extensions(Map.of("classification", message, "persistedQueryId", hash))
+                .build();
+        return new PreparsedDocumentEntry(List.of(error));
+    }
+
+}
@@ -0,0 +1,148 @@
+package books.graphql;
+
+import graphql.language.Argument;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.IntValue;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.Value;
+import graphql.language.VariableReference;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLFieldsContainer;
+import graphql.schema.GraphQLNamedType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
+import graphql.schema.GraphQLTypeUtil;
+
+import java.util.Map;
+
+/**
+ * Static cost of an operation, computed from the document before anything executes. Each field costs its
+ * weight plus the cost of its selection times the number of items it can return: the value of a {@code first},
+ * {@code last} or {@code limit} argument when present, otherwise the default list size for list fields.
+ * Lists directly under a connection are already counted by the connection's page size.
+ */
+final class QueryCostAnalyzer {
+
+    private static final String[] SIZE_ARGUMENTS = {"first", "last", "limit"};
+
+    private final QueryCostProperties properties;
+
+    QueryCostAnalyzer(QueryCostProperties properties) {
+        this.properties = properties;
+    }
+
+    record Cost(long cost, int depth) {
+    }
+
+    Cost analyze(GraphQLSchema schema, OperationDefinition operation, Map<String, FragmentDefinition> fragments,
+                 Map<String, Object> variables) {
+        GraphQLFieldsContainer root = switch (operation.getOperation()) {
+            case MUTATION -> schema.getMutationType();
+            case SUBSCRIPTION -> schema.getSubscriptionType();
+            default -> schema.getQueryType();
+        };
+        Walk walk = new Walk(schema, fragments, variables);
+        long cost = walk.selectionSet(root, operation.getSelectionSet(), 1);
+        return new Cost(cost, walk.maxDepth);
+    }
+
+    private final class Walk {
+
+        private final GraphQLSchema schema;
+        private final Map<String, FragmentDefinition> fragments;
+        private final Map<String, Object> variables;
+        private int maxDepth;
+
+        private Walk(GraphQLSchema schema, Map<String, FragmentDefinition> fragments, Map<String, Object> variables) {
+            this.schema = schema;
+            this.fragments = fragments;
+            this.variables = variables;
+        }
+
+        // fragments on different union members are added up, which over-estimates but never under-estimates
+        private long selectionSet(GraphQLType parent, SelectionSet selectionSet, int depth) {
+            if (selectionSet == null) {
+                return 0;
+            }
+            long cost = 0;
+            for (Selection<?> selection : selectionSet.getSelections()) {
+                switch (selection) {
+                    case Field field -> cost = saturatedAdd(cost, field(parent, field, depth));
+                    case InlineFragment fragment -> cost = saturatedAdd(cost, selectionSet(
+                            fragment.getTypeCondition() == null ? parent : schema.getType(fragment.getTypeCondition().getName()),
+                            fragment.getSelectionSet(), depth));
+                    case FragmentSpread spread -> {
+                        FragmentDefinition fragment = fragments.get(spread.getName());
+                        if (fragment != null) {
+                            cost = saturatedAdd(cost, selectionSet(schema.getType(fragment.getTypeCondition().getName()),
+                                    fragment.getSelectionSet(), depth));
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            return cost;
+        }
+
+        private long field(GraphQLType parent, Field field, int depth) {
+            if (field.getName().startsWith("__") || !(parent instanceof GraphQLFieldsContainer container)) {
+                return 0;
+            }
+            GraphQLFieldDefinition definition = container.getFieldDefinition(field.getName());
+            if (definition == null) {
+                return 0;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+            GraphQLType type = definition.getType();
+            long items = pageSize(field);
+            if (items < 0) {
+                boolean list = GraphQLTypeUtil.isList(GraphQLTypeUtil.unwrapNonNull(type));
+                items = list && !container.getName().endsWith("Connection") ? properties.defaultListSize() : 1;
+            }
+            GraphQLNamedType fieldType = GraphQLTypeUtil.unwrapAll(type);
+            long children = selectionSet(fieldType, field.getSelectionSet(), depth + 1);
+            return saturatedAdd(properties.weight(container.getName() + "." + field.getName()),
+                    saturatedMultiply(items, children));
+        }
+
+        private long pageSize(Field field) {
+            for (String name : SIZE_ARGUMENTS) {
+                for (Argument argument : field.getArguments()) {
+                    if (argument.getName().equals(name)) {
+                        long size = intValue(argument.getValue());
+                        if (size >= 0) {
+                            return size;
+                        }
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private long intValue(Value<?> value) {
+            if (value instanceof IntValue intValue) {
+                return intValue.getValue().longValue();
+            }
+            if (value instanceof VariableReference reference && variables.get(reference.getName()) instanceof Number number) {
+                return number.longValue();
+            }
+            return -1;
+        }
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        return a != 0 && b > Long.MAX_VALUE / a ? Long.MAX_VALUE : a * b;
+    }
+
+}
@@ -0,0 +1,111 @@
+package books.graphql;
+
+import books.graphql.QueryCostAnalyzer.Cost;
+import graphql.ExecutionResult;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost-based admission control. Every operation is costed from its document before execution; operations that
+ * are too deep or too expensive are rejected outright, and the rest must acquire their cost from a shared budget,
+ * so the number of queries running at once depends on how heavy they are rather than on a fixed count.
+ * The estimate is reported under {@code extensions.cost} on every response.
+ */
+@Component
+public class QueryCostInstrumentation extends SimplePerformantInstrumentation {
+
+    static final String TOO_DEEP = "QueryTooDeep";
+    static final String TOO_EXPENSIVE = "QueryTooExpensive";
+    static final String OVER_CAPACITY = "ServerOverCapacity";
+
+    private final QueryCostProperties properties;
+    private final QueryCostAnalyzer analyzer;
+    private final Semaphore budget;
+
+    public QueryCostInstrumentation(QueryCostProperties properties) {
+        this.properties = properties;
+        this.analyzer = new QueryCostAnalyzer(properties);
+        this.budget = new Semaphore(properties.capacity(), true);
+    }
+
+    @Override
+    public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+        return new CostState();
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters,
+                                                                         InstrumentationState state) {
+        ExecutionContext context = parameters.getExecutionContext();
+        Cost cost = analyzer.analyze(context.getGraphQLSchema(), context.getOperationDefinition(),
+                context.getFragmentsByName(), context.getCoercedVariables().toMap());
+        ((CostState) state).cost = cost;
+
+        if (cost.depth() > properties.maxDepth()) {
+            throw reject(TOO_DEEP, "Query depth %d exceeds the limit of %d".formatted(cost.depth(), properties.maxDepth()));
+        }
+        if (cost.cost() > properties.maxCost()) {
+            throw reject(TOO_EXPENSIVE, "Query cost %d exceeds the limit of %d".formatted(cost.cost(), properties.maxCost()));
+        }
+        int permits = (int) Math.clamp(cost.cost(), 1, properties.capacity());
+        if (!acquire(permits)) {
+            throw reject(OVER_CAPACITY, "Server is at capacity, retry later");
+        }
+        return SimpleInstrumentationContext.whenCompleted((result, error) -> budget.release(permits));
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult,
+                                                                        InstrumentationExecutionParameters parameters,
+                                                                        InstrumentationState state) {
+        Cost cost = state instanceof CostState costState ? costState.cost : null;
+        if (cost == null) {
+            return CompletableFuture.completedFuture(executionResult);
+        }
+        Map<String, Object> extension = new LinkedHashMap<>();
+        extension.put("estimated", cost.cost());
+        extension.put("depth", cost.depth());
+        extension.put("maxCost", properties.maxCost());
+        extension.put("maxDepth", properties.maxDepth());
+        return CompletableFuture.completedFuture(executionResult.transform(result -> result.addExtension("cost", extension)));
+    }
+
+    private boolean acquire(int permits) {
+        try {
+            return budget.tryAcquire(permits, properties.queueTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static AbortExecutionException reject(String classification, String message) {
+        GraphQLError error = GraphqlErrorBuilder.newError()
+                .message(message)
+                .extensions(Map.of("classification", classification))
+                .build();
+        return new AbortExecutionException(List.of(error));
+    }
+
+    private static final class CostState implements InstrumentationState {
+        private volatile Cost cost;
+    }
+
+}
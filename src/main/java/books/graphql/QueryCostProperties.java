@@ -0,0 +1,26 @@
+package books.graphql;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Map;
+
+@ConfigurationProperties("books.graphql.cost")
+public record QueryCostProperties(int maxCost, int maxDepth, int defaultListSize, int capacity,
+                                  Duration queueTimeout, Map<String, Integer> weights) {
+
+    public QueryCostProperties {
+        maxCost = maxCost > 0 ? maxCost : 5_000;
+        maxDepth = maxDepth > 0 ? maxDepth : 10;
+        defaultListSize = defaultListSize > 0 ? defaultListSize : 20;
+        capacity = capacity > 0 ? capacity : 50_000;
+        queueTimeout = queueTimeout == null ? Duration.ofSeconds(1) : queueTimeout;
+        weights = weights == null ? Map.of() : Map.copyOf(weights);
+    }
+
+    // keyed by field coordinate, e.g. "Query.search" or "Author.books"
+    int weight(String coordinate) {
+        return weights.getOrDefault(coordinate, 1);
+    }
+
+}
@@ -0,0 +1,110 @@
+package books.graphql;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for GraphQL resolvers, tagged by operation name and field coordinate
+ * ({@code Author.books}, {@code Query.search}). Meters are looked up once per tag combination and cached.
+ * Distinct operation names are capped so client-chosen names cannot grow the registry without bound.
+ */
+@Component
+public class ResolverMetrics {
+
+    static final String FIELD_TIMER = "books.graphql.field";
+    static final String RESULT_SIZE = "books.graphql.field.result.size";
+    static final String ALLOCATED = "books.graphql.field.allocated";
+    static final String BATCH_SIZE = "books.graphql.dataloader.batch.size";
+    static final String OTHER_OPERATION = "other";
+
+    private static final com.sun.management.ThreadMXBean threads = allocationBean();
+
+    private final MeterRegistry registry;
+    private final ResolverMetricsProperties properties;
+    private final Map<FieldKey, FieldMeters> fields = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> batches = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> operations = new ConcurrentHashMap<>();
+
+    public ResolverMetrics(MeterRegistry registry, ResolverMetricsProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+    }
+
+    boolean enabled() {
+        return properties.enabled();
+    }
+
+    public void recordBatch(String loader, int size) {
+        if (properties.enabled()) {
+            batches.computeIfAbsent(loader, name -> DistributionSummary.builder(BATCH_SIZE)
+                    .tag("loader", name)
+                    .publishPercentileHistogram()
+                    .register(registry)).record(size);
+        }
+    }
+
+    void recordField(String operation, String field, boolean success, long nanos, int resultSize, long allocatedBytes) {
+        FieldMeters meters = fields.computeIfAbsent(new FieldKey(operation(operation), field, success), this::meters);
+        meters.latency.record(nanos, TimeUnit.NANOSECONDS);
+        meters.resultSize.record(resultSize);
+        if (allocatedBytes >= 0) {
+            meters.allocated.record(allocatedBytes);
+        }
+    }
+
+    // -1 when allocation tracking is off or the JVM cannot measure the current thread
+    long allocatedBytes() {
+        return properties.allocation() && threads != null ? threads.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private String operation(String name) {
+        String operation = name == null || name.isBlank() ? "anonymous" : name;
+        if (operations.containsKey(operation)) {
+            return operation;
+        }
+        if (operations.size() >= properties.maxOperations()) {
+            return OTHER_OPERATION;
+        }
+        operations.putIfAbsent(operation, Boolean.TRUE);
+        return operation;
+    }
+
+    private FieldMeters meters(FieldKey key) {
+        String outcome = key.success() ? "success" : "error";
+        return new FieldMeters(
+                Timer.builder(FIELD_TIMER)
+                        .tags("operation", key.operation(), "field", key.field(), "outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(registry),
+                DistributionSummary.builder(RESULT_SIZE)
+                        .tags("operation", key.operation(), "field", key.field())
+                        .register(registry),
+                DistributionSummary.builder(ALLOCATED)
+                        .baseUnit("bytes")
+                        .tags("operation", key.operation(), "field", key.field())
+                        .register(registry));
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    private record FieldKey(String operation, String field, boolean success) {
+    }
+
+    private record FieldMeters(Timer latency, DistributionSummary resultSize, DistributionSummary allocated) {
+    }
+
+}
@@ -0,0 +1,150 @@
+package books.graphql;
+
+import graphql.ExecutionResult;
+import graphql.execution.DataFetcherResult;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLNamedType;
+import graphql.schema.GraphQLTypeUtil;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Times every non-trivial resolver into {@link ResolverMetrics} and, when the request carries the debug header,
+ * returns a per-field trace under {@code extensions.resolvers}. With metrics disabled and no debug header no
+ * state is created and data fetchers are returned unwrapped.
+ */
+@Component
+public class ResolverMetricsInstrumentation extends SimplePerformantInstrumentation {
+
+    private final ResolverMetrics metrics;
+
+    public ResolverMetricsInstrumentation(ResolverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+        boolean trace = Boolean.TRUE.equals(parameters.getExecutionInput().getGraphQLContext().get(DebugHeaderInterceptor.TRACE));
+        if (!metrics.enabled() && !trace) {
+            return null;
+        }
+        return new Recording(parameters.getExecutionInput().getOperationName(), trace);
+    }
+
+    @Override
+    public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters,
+                                                InstrumentationState state) {
+        if (!(state instanceof Recording recording) || parameters.isTrivialDataFetcher()) {
+            return dataFetcher;
+        }
+        return environment -> recording.fetch(dataFetcher, environment);
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult,
+                                                                        InstrumentationExecutionParameters parameters,
+                                                                        InstrumentationState state) {
+        if (!(state instanceof Recording recording) || !recording.trace) {
+            return CompletableFuture.completedFuture(executionResult);
+        }
+        return CompletableFuture.completedFuture(executionResult.transform(result -> result.addExtension("resolvers", recording.trace())));
+    }
+
+    private final class Recording implements InstrumentationState {
+
+        private final String operation;
+        private final boolean trace;
+        private final long start = System.nanoTime();
+        private final List<Map<String, Object>> fields = new ArrayList<>();
+
+        private Recording(String operation, boolean trace) {
+            this.operation = operation;
+            this.trace = trace;
+        }
+
+        private Object fetch(DataFetcher<?> dataFetcher, DataFetchingEnvironment environment) throws Exception {
+            long begin = System.nanoTime();
+            long allocatedBefore = metrics.allocatedBytes();
+            Object value;
+            try {
+                value = dataFetcher.get(environment);
+            } catch (Exception | Error e) {
+                record(environment, begin, allocatedBefore, false, null);
+                throw e;
+            }
+            if (value instanceof CompletionStage<?> stage) {
+                // the work runs on another thread, e.g. one forked by ParallelResolverInstrumentation, so what this
+                // thread allocated is only the hand-off; the allocation is unknown rather than about zero
+                return stage.whenComplete((result, error) -> record(environment, begin, -1, error == null, result));
+            }
+            record(environment, begin, allocated(allocatedBefore), true, value);
+            return value;
+        }
+
+        // bytes allocated by the calling thread inside a synchronous resolver; -1 if unknown
+        private long allocated(long before) {
+            if (before < 0) {
+                return -1;
+            }
+            long after = metrics.allocatedBytes();
+            return after < 0 ? -1 : after - before;
+        }
+
+        private void record(DataFetchingEnvironment environment, long begin, long allocated, boolean success, Object value) {
+            long nanos = System.nanoTime() - begin;
+            GraphQLNamedType parent = (GraphQLNamedType) GraphQLTypeUtil.unwrapAll(environment.getParentType());
+            String coordinate = parent.getName() + "." + environment.getField().getName();
+            int size = size(value);
+            if (metrics.enabled()) {
+                metrics.recordField(operation, coordinate, success, nanos, size, allocated);
+            }
+            if (trace) {
+                Map<String, Object> field = new LinkedHashMap<>();
+                field.put("path", environment.getExecutionStepInfo().getPath().toString());
+                field.put("field", coordinate);
+                field.put("startOffsetNanos", begin - start);
+                field.put("durationNanos", nanos);
+                field.put("resultSize", size);
+                field.put("success", success);
+                if (allocated >= 0) {
+                    field.put("allocatedBytes", allocated);
+                }
+                synchronized (fields) {
+                    fields.add(field);
+                }
+            }
+        }
+
+        private Map<String, Object> trace() {
+            Map<String, Object> trace = new LinkedHashMap<>();
+            trace.put("operation", operation);
+            trace.put("durationNanos", System.nanoTime() - start);
+            synchronized (fields) {
+                trace.put("fields", List.copyOf(fields));
+            }
+            return trace;
+        }
+    }
+
+    private static int size(Object value) {
+        Object data = value instanceof DataFetcherResult<?> result ? result.getData() : value;
+        if (data == null) {
+            return 0;
+        }
+        return data instanceof Collection<?> collection ? collection.size() : 1;
+    }
+
+}
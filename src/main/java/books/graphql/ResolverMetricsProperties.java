@@ -0,0 +1,13 @@
+package books.graphql;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("books.graphql.metrics")
+public record ResolverMetricsProperties(boolean enabled, boolean allocation, String debugHeader, int maxOperations) {
+
+    public ResolverMetricsProperties {
+        debugHeader = debugHeader == null || debugHeader.isBlank() ? "X-GraphQL-Debug" : debugHeader;
+        maxOperations = maxOperations > 0 ? maxOperations : 100;
+    }
+
+}
@@ -0,0 +1,135 @@
+package books.graphql;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * Structured concurrency for one GraphQL request: blocking resolvers are forked onto virtual threads owned by
+ * the request, at most {@code maxFanOut} at a time. Every fork shares one deadline; the first failure cancels
+ * the siblings and interrupts their threads, and closing the scope when the operation ends interrupts anything
+ * left. This is the ShutdownOnFailure shape of {@code StructuredTaskScope} without depending on a preview API.
+ */
+final class ResolverScope implements AutoCloseable {
+
+    private final long deadline;
+    private final Semaphore fanOut;
+    private final Set<CompletableFuture<?>> running = ConcurrentHashMap.newKeySet();
+    private volatile ExecutorService executor;
+    private volatile Throwable failure;
+
+    ResolverScope(long timeoutNanos, int maxFanOut) {
+        this.deadline = System.nanoTime() + timeoutNanos;
+        this.fanOut = new Semaphore(maxFanOut);
+    }
+
+    // synchronous non-forked results are returned as-is, so cheap fields pay nothing
+    Object fetch(DataFetcher<?> fetcher, DataFetchingEnvironment environment, boolean fork) throws Exception {
+        if (failure != null) {
+            return CompletableFuture.failedFuture(new CancellationException("Cancelled after a sibling resolver failed"));
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return CompletableFuture.failedFuture(new TimeoutException("Request deadline exceeded"));
+        }
+        CompletableFuture<Object> result;
+        if (fork) {
+            result = fork(fetcher, environment);
+        } else {
+            Object value = fetcher.get(environment);
+            if (!(value instanceof CompletionStage<?> stage)) {
+                return value;
+            }
+            result = new CompletableFuture<>();
+            stage.whenComplete(complete(result));
+        }
+        running.add(result);
+        result.orTimeout(remaining, TimeUnit.NANOSECONDS).whenComplete((value, error) -> {
+            running.remove(result);
+            if (error != null) {
+                fail(error);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Object> fork(DataFetcher<?> fetcher, DataFetchingEnvironment environment) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        executor().execute(() -> {
+            try {
+                fanOut.acquire();
+                try {
+                    Object value = fetcher.get(environment);
+                    if (value instanceof CompletionStage<?> stage) {
+                        stage.whenComplete(complete(result));
+                    } else {
+                        result.complete(value);
+                    }
+                } finally {
+                    fanOut.release();
+                }
+            } catch (Throwable error) {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    private void fail(Throwable error) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            failure = error;
+        }
+        for (CompletableFuture<?> sibling : running) {
+            sibling.cancel(true);
+        }
+        close();
+    }
+
+    // created on the first fork, so requests that never fork never start an executor
+    private ExecutorService executor() {
+        ExecutorService current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    current = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("graphql-resolver-", 0).factory());
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public void close() {
+        ExecutorService current = executor;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    private static BiConsumer<Object, Throwable> complete(CompletableFuture<Object> result) {
+        return (value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        };
+    }
+
+}
@@ -1,40 +1,42 @@
 package books.search;
 
 import books.book.BookRepository;
+import books.book.CatalogSnapshot;
+import books.cache.CacheRegion;
+import books.cache.QueryCache;
+import books.graphql.CatalogSnapshotInstrumentation;
+import graphql.GraphQLContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.graphql.data.method.annotation.Argument;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
 import org.springframework.stereotype.Controller;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Controller
 public class SearchController {
 
     private static final Logger log = LoggerFactory.getLogger(SearchController.class);
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
     private final BookRepository bookRepository;
+    private final CacheRegion<SearchKey, List<Object>> searchCache;
 
-    public SearchController(BookRepository bookRepository) {
+    public SearchController(BookRepository bookRepository, QueryCache queryCache) {
         this.bookRepository = bookRepository;
+        this.searchCache = queryCache.region("search", (key, change) -> change.touchesText(key.text()));
     }
 
-    @QueryMapping
-    public List<Object> search(@Argument String text) {
-        List<Object> results = new ArrayList<>();
-
-        // Search books by title
-        bookRepository.findAll().stream()
-                .filter(book -> book.title().toLowerCase().contains(text.toLowerCase()))
-                .forEach(results::add);
+    private record SearchKey(String text, int limit) {}
 
-        // Search authors by name
-        bookRepository.findAllAuthors().stream()
-                .filter(author -> author.name().toLowerCase().contains(text.toLowerCase()))
-                .forEach(results::add);
-
-        return results;
+    @QueryMapping
+    public List<Object> search(@Argument String text, @Argument Integer limit, GraphQLContext context) {
+        int max = limit == null ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        CatalogSnapshot pinned = CatalogSnapshotInstrumentation.pinned(context);
+        CatalogSnapshot snapshot = pinned != null ? pinned : bookRepository.snapshot();
+        return searchCache.get(new SearchKey(text, max), () -> bookRepository.isCurrent(snapshot),
+                () -> snapshot.search(text, max));
     }
 
 }
@@ -0,0 +1,8 @@
+package books.subscription;
+
+import books.book.Book;
+
+import java.util.List;
+
+public record BookChangeEvent(List<Book> added, List<Book> deleted, int missed) {
+}
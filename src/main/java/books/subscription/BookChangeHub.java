@@ -0,0 +1,137 @@
+package books.subscription;
+
+import books.book.Book;
+import books.book.BookFilter;
+import books.book.BookRepository;
+import books.book.CatalogChange;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fans repository changes out to subscribers. Writers only enqueue the change; a single dispatcher thread
+ * offers it best-effort to every subscriber's bounded buffer, which drops its oldest entries when the client
+ * falls behind. Everything else per subscriber (filtering, building events, the transport's write) runs on that
+ * subscriber's own virtual thread, so a slow or blocking client loses events, never stalls the publisher or the
+ * other subscribers.
+ */
+@Component
+public class BookChangeHub {
+
+    // taken out of the buffer with the number of matching changes dropped just before it
+    private record Pending(CatalogChange change, int missed) {
+    }
+
+    private final Sinks.Many<CatalogChange> sink = Sinks.many().multicast().directBestEffort();
+    private final ExecutorService dispatcher =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("book-changes").factory());
+    private final Scheduler delivery = Schedulers.fromExecutorService(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("book-changes-delivery-", 0).factory()),
+            "book-changes-delivery");
+    private final LongAdder dropped = new LongAdder();
+    private final int bufferSize;
+    private volatile boolean closed;
+
+    public BookChangeHub(BookRepository bookRepository,
+                         @Value("${books.subscriptions.buffer-size:256}") int bufferSize) {
+        this.bufferSize = bufferSize;
+        bookRepository.addChangeListener(this::dispatch);
+    }
+
+    // runs under the repository's write lock. The hub is destroyed before the repository, so writes that still
+    // commit during shutdown are dropped here instead of failing on the stopped dispatcher
+    private void dispatch(CatalogChange change) {
+        if (closed) {
+            return;
+        }
+        try {
+            dispatcher.execute(() -> sink.tryEmitNext(change));
+        } catch (RejectedExecutionException e) {
+            // closed between the check and the execute
+        }
+    }
+
+    // one element per changed book, e.g. CatalogChange::addedBooks
+    public Flux<Book> books(Function<CatalogChange, List<Book>> select) {
+        return buffered(change -> dropped.add(select.apply(change).size()))
+                .flatMapIterable(select);
+    }
+
+    // one event per write that touches the filter; missed tells a lagging client how many it lost
+    public Flux<BookChangeEvent> changes(BookFilter filter) {
+        return Flux.defer(() -> {
+            // the drop callback runs on the dispatcher, so only a lagging subscriber pays for filtering there
+            AtomicInteger missed = new AtomicInteger();
+            int[] carried = new int[1];
+            return sink.asFlux()
+                    .onBackpressureBuffer(capacity(), change -> {
+                        dropped.increment();
+                        if (change.touches(filter)) {
+                            missed.incrementAndGet();
+                        }
+                    }, BufferOverflowStrategy.DROP_OLDEST)
+                    .map(change -> new Pending(change, missed.getAndSet(0)))
+                    .publishOn(delivery, 1)
+                    .handle((pending, events) -> {
+                        // a change that does not match hands its missed count on to the next one that does
+                        carried[0] += pending.missed();
+                        CatalogChange change = pending.change();
+                        if (change.touches(filter)) {
+                            events.next(new BookChangeEvent(matching(change.addedBooks(), filter),
+                                    matching(change.deletedBooks(), filter), carried[0]));
+                            carried[0] = 0;
+                        }
+                    });
+        });
+    }
+
+    // the dispatcher only offers the change to the subscriber's buffer; publishOn takes one change at a time off
+    // it on the subscriber's delivery thread, so a subscriber holds at most bufferSize changes
+    private Flux<CatalogChange> buffered(Consumer<CatalogChange> onDrop) {
+        return sink.asFlux()
+                .onBackpressureBuffer(capacity(), onDrop, BufferOverflowStrategy.DROP_OLDEST)
+                .publishOn(delivery, 1);
+    }
+
+    // one of the bufferSize slots is the change publishOn is holding
+    private int capacity() {
+        return Math.max(1, bufferSize - 1);
+    }
+
+    public int subscriberCount() {
+        return sink.currentSubscriberCount();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        closed = true;
+        dispatcher.execute(sink::tryEmitComplete);
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+        delivery.dispose();
+    }
+
+    private static List<Book> matching(List<Book> books, BookFilter filter) {
+        return filter == null || filter.isEmpty() ? books : books.stream().filter(filter::matches).toList();
+    }
+
+}
@@ -0,0 +1,35 @@
+package books.subscription;
+
+import books.book.Book;
+import books.book.BookFilter;
+import books.book.CatalogChange;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.SubscriptionMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+
+@Controller
+public class SubscriptionController {
+
+    private final BookChangeHub changes;
+
+    public SubscriptionController(BookChangeHub changes) {
+        this.changes = changes;
+    }
+
+    @SubscriptionMapping
+    public Flux<Book> bookAdded() {
+        return changes.books(CatalogChange::addedBooks);
+    }
+
+    @SubscriptionMapping
+    public Flux<Book> bookDeleted() {
+        return changes.books(CatalogChange::deletedBooks);
+    }
+
+    @SubscriptionMapping
+    public Flux<BookChangeEvent> booksChanged(@Argument BookFilter filter) {
+        return changes.changes(filter);
+    }
+
+}
@@ -0,0 +1,170 @@
+package books;
+
+import books.book.Author;
+import books.book.Book;
+import books.book.BookFilter;
+import books.book.BookRepository;
+import books.book.CatalogChange;
+import books.subscription.BookChangeEvent;
+import books.subscription.BookChangeHub;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+@DisplayName("Book Change Hub Tests")
+class BookChangeHubTest {
+
+    private BookRepository bookRepository;
+    private BookChangeHub hub;
+    private Author author;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = new BookRepository();
+        bookRepository.init();
+        hub = new BookChangeHub(bookRepository, 4);
+        author = bookRepository.findAuthorByName("Craig Walls");
+    }
+
+    @Test
+    @DisplayName("Should deliver added and deleted books to every subscriber")
+    void shouldFanOutToEverySubscriber() throws Exception {
+        var first = hub.books(CatalogChange::addedBooks).next().toFuture();
+        var second = hub.books(CatalogChange::addedBooks).next().toFuture();
+        var deleted = hub.books(CatalogChange::deletedBooks).next().toFuture();
+        await(() -> hub.subscriberCount() == 3);
+
+        Book book = bookRepository.createBook("Spring Subscriptions", author, 2025);
+        bookRepository.deleteBookById(book.id());
+
+        assertThat(first.get().title()).isEqualTo("Spring Subscriptions");
+        assertThat(second.get().title()).isEqualTo("Spring Subscriptions");
+        assertThat(deleted.get().id()).isEqualTo(book.id());
+    }
+
+    @Test
+    @DisplayName("Should only send changes that match the subscriber's filter")
+    void shouldFilterOnTheServer() throws Exception {
+        var changes = hub.changes(new BookFilter("walls", null)).next().toFuture();
+        await(() -> hub.subscriberCount() == 1);
+
+        bookRepository.createBook("Someone Else's Book", bookRepository.findAuthorByName("Josh Long"), 2025);
+        bookRepository.createBook("Spring in Action, 7th Edition", author, 2025);
+
+        BookChangeEvent event = changes.get();
+        assertThat(event.added()).extracting(Book::title).containsExactly("Spring in Action, 7th Edition");
+        assertThat(event.missed()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should drop the oldest events for a slow subscriber without blocking writers")
+    void shouldDropOldestForSlowSubscriber() throws Exception {
+        List<BookChangeEvent> received = new CopyOnWriteArrayList<>();
+        BaseSubscriber<BookChangeEvent> slow = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                // no demand until the test asks for it
+            }
+
+            @Override
+            protected void hookOnNext(BookChangeEvent event) {
+                received.add(event);
+            }
+        };
+        hub.changes(null).subscribe(slow);
+        await(() -> hub.subscriberCount() == 1);
+
+        for (int i = 0; i < 10; i++) {
+            bookRepository.createBook("Book " + i, author, 2025);
+        }
+        await(() -> hub.droppedCount() == 6);
+        slow.request(10);
+        await(() -> received.size() == 4);
+
+        // Book 0 was already handed to the subscriber's delivery thread; the oldest buffered ones were dropped
+        assertThat(received).extracting(event -> event.added().getFirst().title())
+                .containsExactly("Book 0", "Book 7", "Book 8", "Book 9");
+        assertThat(received).extracting(BookChangeEvent::missed).containsExactly(0, 6, 0, 0);
+        slow.dispose();
+    }
+
+    @Test
+    @DisplayName("Should keep delivering to other subscribers while one blocks inside onNext")
+    void shouldNotStallOnBlockingSubscriber() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        BaseSubscriber<Book> blocking = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnNext(Book book) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        hub.books(CatalogChange::addedBooks).subscribe(blocking);
+        List<Book> received = new CopyOnWriteArrayList<>();
+        hub.books(CatalogChange::addedBooks).subscribe(received::add);
+        await(() -> hub.subscriberCount() == 2);
+
+        bookRepository.createBook("First", author, 2025);
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        bookRepository.createBook("Second", author, 2025);
+        bookRepository.createBook("Third", author, 2025);
+
+        await(() -> received.size() == 3);
+        assertThat(received).extracting(Book::title).containsExactly("First", "Second", "Third");
+        release.countDown();
+        blocking.dispose();
+    }
+
+    @Test
+    @DisplayName("Should complete subscribers on close and ignore the writes that still commit during shutdown")
+    void shouldIgnoreChangesAfterClose() throws Exception {
+        List<Consumer<CatalogChange>> listeners = new ArrayList<>();
+        BookRepository repository = new BookRepository() {
+            @Override
+            public void addChangeListener(Consumer<CatalogChange> listener) {
+                listeners.add(listener);
+                super.addChangeListener(listener);
+            }
+        };
+        repository.init();
+        BookChangeHub closing = new BookChangeHub(repository, 4);
+        List<Book> received = new CopyOnWriteArrayList<>();
+        var completed = closing.books(CatalogChange::addedBooks).doOnNext(received::add).then().toFuture();
+        await(() -> closing.subscriberCount() == 1);
+
+        closing.close();
+        completed.get(5, TimeUnit.SECONDS);
+        Book book = repository.createBook("During shutdown", author, 2025);
+        assertThatCode(() -> listeners.getFirst()
+                .accept(new CatalogChange(List.of(book), List.of(), List.of()))).doesNotThrowAnyException();
+        assertThat(received).isEmpty();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+}
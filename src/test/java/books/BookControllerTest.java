@@ -1,5 +1,6 @@
 package books;
 
+import books.graphql.PersistedDocumentProvider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -8,6 +9,8 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.client.RestTestClient;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.util.Map;
+
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @DisplayName("Book HTTP Interface Tests")
 @SuppressWarnings("all")
@@ -51,4 +54,36 @@ public class BookControllerTest {
 
     }
 
+    @Test
+    @DisplayName("A hash-only GraphQL request misses, registers with the full text, then hits")
+    void persistedQueryOverHttp() throws Exception{
+        String query = "query PersistedOverHttp { book(id: 1) { title } }";
+        Map<String, Object> extensions = Map.of("persistedQuery",
+                Map.of("version", 1, "sha256Hash", PersistedDocumentProvider.sha256(query)));
+
+        // no "query" member at all, as automatic persisted query clients send it
+        postGraphQl(Map.of("extensions", extensions))
+                .jsonPath("$.errors[0].message").isEqualTo("PersistedQueryNotFound")
+                .jsonPath("$.data").doesNotExist();
+
+        postGraphQl(Map.of("query", query, "extensions", extensions))
+                .jsonPath("$.errors").doesNotExist()
+                .jsonPath("$.data.book.title").isEqualTo("Effective Java");
+
+        postGraphQl(Map.of("extensions", extensions))
+                .jsonPath("$.errors").doesNotExist()
+                .jsonPath("$.data.book.title").isEqualTo("Effective Java");
+    }
+
+    private RestTestClient.BodyContentSpec postGraphQl(Map<String, Object> body) {
+        return client.post()
+                .uri("/graphql")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .body(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody();
+    }
+
 }
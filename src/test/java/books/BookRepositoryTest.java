@@ -0,0 +1,593 @@
+package books;
+
+import books.book.Author;
+import books.book.Book;
+import books.book.BookFilter;
+import books.book.BookOrder;
+import books.book.CatalogChange;
+import books.book.CatalogDataProperties;
+import books.book.CatalogSnapshot;
+import books.book.CatalogGenerator;
+import books.book.CreateBookInput;
+import books.book.BookRepository;
+import books.pagination.BookConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Book Repository Tests")
+class BookRepositoryTest {
+
+    private BookRepository bookRepository;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = new BookRepository();
+        bookRepository.init();
+    }
+
+    @Test
+    @DisplayName("Should look up books and authors by id")
+    void shouldFindByIds() {
+        assertThat(bookRepository.findById(1L).title()).isEqualTo("Effective Java");
+        assertThat(bookRepository.findById(999L)).isNull();
+        assertThat(bookRepository.findAuthorById(3L).name()).isEqualTo("Joshua Bloch");
+    }
+
+    @Test
+    @DisplayName("Should find authors by name ignoring case")
+    void shouldFindAuthorByNameIgnoringCase() {
+        assertThat(bookRepository.findAuthorByName("craig WALLS").name()).isEqualTo("Craig Walls");
+        assertThat(bookRepository.findAuthorByName("Nobody")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should keep the author index in step with creates and deletes")
+    void shouldMaintainAuthorIndex() {
+        Author craigWalls = bookRepository.findAuthorByName("Craig Walls");
+        assertThat(bookRepository.findBooksByAuthorIds(List.of(craigWalls.id()))).hasSize(2);
+
+        Book book = bookRepository.createBook("Spring AI in Action", craigWalls, 2025);
+        assertThat(bookRepository.findBooksByAuthorIds(List.of(craigWalls.id()))).hasSize(3).contains(book);
+
+        assertThat(bookRepository.deleteBookById(book.id())).isTrue();
+        assertThat(bookRepository.deleteBookById(book.id())).isFalse();
+        assertThat(bookRepository.findBooksByAuthorIds(List.of(craigWalls.id()))).hasSize(2);
+        assertThat(bookRepository.findById(book.id())).isNull();
+    }
+
+    @Test
+    @DisplayName("Should bump the data version on every write and only on writes")
+    void shouldBumpDataVersionOnWrites() {
+        long initial = bookRepository.dataVersion();
+        bookRepository.findAll();
+        assertThat(bookRepository.dataVersion()).isEqualTo(initial);
+
+        Author author = bookRepository.createAuthor("Version Author");
+        Book book = bookRepository.createBook("Versioned", author, 2025);
+        bookRepository.deleteBookById(book.id());
+        bookRepository.deleteBookById(book.id());
+
+        assertThat(bookRepository.dataVersion()).isEqualTo(initial + 3);
+    }
+
+    @Test
+    @DisplayName("Should apply a bulk create or delete as one write with one change event")
+    void shouldApplyBulkWritesAsOneChange() {
+        List<CatalogChange> changes = new ArrayList<>();
+        bookRepository.addChangeListener(changes::add);
+        long version = bookRepository.dataVersion();
+
+        List<Book> created = bookRepository.createBooks(List.of(
+                new CreateBookInput("Spring Batch in Action", "Craig Walls", 2025),
+                new CreateBookInput("Spring Shell in Action", "CRAIG WALLS", null),
+                new CreateBookInput("Unattributed", "Nobody", 1999)));
+
+        assertThat(created).extracting(Book::id).containsExactly(26L, 27L, 28L);
+        assertThat(created.get(0).author()).isSameAs(created.get(1).author()).isEqualTo(bookRepository.findAuthorByName("Craig Walls"));
+        assertThat(created.get(2).author()).isNull();
+        assertThat(bookRepository.findBooksByAuthorIds(List.of(created.get(0).author().id()))).hasSize(4);
+        assertThat(bookRepository.search("in action", 50)).contains(created.get(0), created.get(1));
+        assertThat(bookRepository.findBooksPaginated(100, null, null, null, BookOrder.TITLE, null).edges())
+                .extracting(edge -> edge.node().title())
+                .containsSubsequence("Refactoring", "Spring Batch in Action", "Spring Boot in Action", "Spring Shell in Action");
+
+        List<Book> deleted = bookRepository.deleteBooks(List.of(27L, 1L, 27L, 999L));
+
+        assertThat(deleted).extracting(Book::id).containsExactly(27L, 1L);
+        assertThat(bookRepository.findAll()).hasSize(26).doesNotContain(created.get(1));
+        assertThat(bookRepository.search("shell", 5)).isEmpty();
+        assertThat(bookRepository.deleteBooks(List.of(999L))).isEmpty();
+        assertThat(bookRepository.dataVersion()).isEqualTo(version + 2);
+        assertThat(changes).hasSize(2);
+        assertThat(changes.get(0).addedBooks()).isEqualTo(created);
+        assertThat(changes.get(1).deletedBooks()).isEqualTo(deleted);
+    }
+
+    @Test
+    @DisplayName("Should rank prefix matches ahead of substring matches and honour the limit")
+    void shouldRankSearchResults() {
+        assertThat(bookRepository.search("spring", 3))
+                .extracting(result -> ((Book) result).title())
+                .containsExactly("Spring Data JPA", "Spring in Action", "Spring Boot in Action");
+
+        assertThat(bookRepository.search("JAVA", 100))
+                .hasSize(7)
+                .first()
+                .isEqualTo(bookRepository.findById(21L));
+    }
+
+    @Test
+    @DisplayName("Should keep the search index in step with creates and deletes")
+    void shouldMaintainSearchIndex() {
+        Author author = bookRepository.createAuthor("Ada Lovelace");
+        Book book = bookRepository.createBook("Notes on the Analytical Engine", author, 1843);
+
+        assertThat(bookRepository.search("analytical", 10)).containsExactly(book);
+        assertThat(bookRepository.search("lovelace", 10)).containsExactly(author);
+
+        bookRepository.deleteBookById(book.id());
+        assertThat(bookRepository.search("analytical", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should keep a cursor valid after the book it points at is deleted")
+    void shouldPageFromDeletedCursor() {
+        BookConnection firstPage = bookRepository.findBooksPaginated(5, null, null, null);
+        String endCursor = firstPage.pageInfo().endCursor();
+
+        bookRepository.deleteBookById(firstPage.edges().get(4).node().id());
+
+        BookConnection nextPage = bookRepository.findBooksPaginated(5, endCursor, null, null);
+        assertThat(nextPage.edges()).extracting(edge -> edge.node().id()).containsExactly(6L, 7L, 8L, 9L, 10L);
+        assertThat(nextPage.pageInfo().hasPreviousPage()).isTrue();
+
+        BookConnection previousPage = bookRepository.findBooksPaginated(null, null, 2, nextPage.pageInfo().startCursor());
+        assertThat(previousPage.edges()).extracting(edge -> edge.node().id()).containsExactly(3L, 4L);
+    }
+
+    @Test
+    @DisplayName("Should evaluate filters from the indexes with the same result as a full scan")
+    void shouldFindBooksWithFilter() {
+        List<BookFilter> filters = List.of(
+                new BookFilter("josh", null),
+                new BookFilter(null, 2019),
+                new BookFilter("a", 2010),
+                new BookFilter("Nobody", 2000));
+
+        for (BookFilter filter : filters) {
+            assertThat(bookRepository.findBooks(filter))
+                    .as(filter.toString())
+                    .containsExactlyElementsOf(bookRepository.findAll().stream().filter(filter::matches).toList());
+        }
+        assertThat(bookRepository.findBooks(new BookFilter("JOSH", 2018)))
+                .extracting(Book::title)
+                .containsExactly("Reactive Spring");
+    }
+
+    @Test
+    @DisplayName("Should match mixed-case author text the same in filters, pages and change events")
+    void shouldNormalizeAuthorFilter() {
+        BookFilter mixedCase = new BookFilter("JoSh", null);
+        List<Book> expected = bookRepository.findBooks(new BookFilter("josh", null));
+        assertThat(mixedCase).isEqualTo(new BookFilter("josh", null));
+        assertThat(expected).isNotEmpty();
+
+        assertThat(bookRepository.findBooks(mixedCase)).isEqualTo(expected);
+        assertThat(bookRepository.findBooksPaginated(100, null, null, null, BookOrder.ID, mixedCase).edges())
+                .extracting(edge -> edge.node())
+                .containsExactlyElementsOf(expected);
+
+        List<CatalogChange> changes = new ArrayList<>();
+        bookRepository.addChangeListener(changes::add);
+        bookRepository.createBook("Spring in Practice", expected.getFirst().author(), 2025);
+        assertThat(changes).singleElement().satisfies(change -> assertThat(change.touches(mixedCase)).isTrue());
+    }
+
+    @Test
+    @DisplayName("Should not trim the author filter, like the original substring match")
+    void shouldNotTrimAuthorFilter() {
+        BookFilter padded = new BookFilter(" Dan Vega", null);
+        assertThat(padded.authorName()).isEqualTo(" dan vega");
+        assertThat(bookRepository.findBooks(padded)).isEmpty();
+        assertThat(bookRepository.findBooksPaginated(100, null, null, null, BookOrder.ID, padded).edges()).isEmpty();
+        assertThat(bookRepository.findBooks(new BookFilter(" Vega", null)))
+                .isNotEmpty()
+                .allSatisfy(book -> assertThat(book.author().name()).isEqualTo("Dan Vega"));
+    }
+
+    @Test
+    @DisplayName("Should bulk load a reproducible synthetic catalog with skewed books per author")
+    void shouldLoadSyntheticCatalog() {
+        CatalogDataProperties.Synthetic spec = new CatalogDataProperties.Synthetic(500, 20_000, 7L, 1.1);
+        bookRepository.loadSynthetic(spec);
+
+        assertThat(bookRepository.findAll()).hasSize(20_000);
+        assertThat(bookRepository.findAllAuthors()).hasSize(500);
+        assertThat(bookRepository.findAll()).isEqualTo(CatalogGenerator.generate(spec).books());
+
+        Map<Long, Long> booksPerAuthor = bookRepository.findAll().stream()
+                .collect(Collectors.groupingBy(book -> book.author().id(), Collectors.counting()));
+        long mostProlific = Collections.max(booksPerAuthor.values());
+        assertThat(mostProlific).isGreaterThan(20_000 / 500 * 10);
+
+        Book book = bookRepository.createBook("After the bulk load", bookRepository.findAuthorById(1L), 2025);
+        assertThat(book.id()).isEqualTo(20_001L);
+        assertThat(bookRepository.search("after the bulk", 5)).containsExactly(book);
+    }
+
+    @Test
+    @DisplayName("Should honour an explicit synthetic seed of 0 and default only a missing one")
+    void shouldHonourZeroSyntheticSeed() {
+        assertThat(new CatalogDataProperties.Synthetic(10, 100, 0L, 1.1).seed()).isZero();
+        assertThat(new CatalogDataProperties.Synthetic(10, 100, null, 1.1).seed()).isEqualTo(42L);
+        assertThat(CatalogGenerator.generate(new CatalogDataProperties.Synthetic(10, 100, 0L, 1.1)).books())
+                .isNotEqualTo(CatalogGenerator.generate(new CatalogDataProperties.Synthetic(10, 100, 42L, 1.1)).books());
+    }
+
+    @Test
+    @DisplayName("Should let readers iterate while writers mutate")
+    void shouldReadSnapshotsDuringConcurrentWrites() throws Exception {
+        Author author = bookRepository.createAuthor("Concurrent Author");
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    Book book = bookRepository.createBook("Book " + i, author, 2024);
+                    if (i % 2 == 0) {
+                        bookRepository.deleteBookById(book.id());
+                    }
+                }
+            });
+            Future<?> reader = executor.submit(() -> {
+                while (!writer.isDone()) {
+                    for (Book book : bookRepository.findAll()) {
+                        assertThat(book.title()).isNotNull();
+                    }
+                }
+            });
+            writer.get();
+            reader.get();
+        }
+        assertThat(bookRepository.findBooksByAuthorIds(List.of(author.id()))).hasSize(250);
+        assertThat(bookRepository.findAll()).hasSize(25 + 250);
+    }
+
+    @Test
+    @DisplayName("Should keep answering from a snapshot while writers publish newer versions")
+    void shouldReadPinnedSnapshot() {
+        CatalogSnapshot snapshot = bookRepository.snapshot();
+        List<Book> books = List.copyOf(snapshot.findAll());
+        Author craigWalls = snapshot.findAuthorByName("Craig Walls");
+        String endCursor = snapshot.findBooksPaginated(2, null, null, null, BookOrder.TITLE, null, true)
+                .pageInfo().endCursor();
+
+        Book added = bookRepository.createBook("Clean Architecture", craigWalls, 2025);
+        bookRepository.deleteBookById(6L);
+        Author author = bookRepository.createAuthor("Architecture Author");
+
+        assertThat(bookRepository.isCurrent(snapshot)).isFalse();
+        assertThat(snapshot.version()).isEqualTo(bookRepository.dataVersion() - 3);
+        assertThat(snapshot.findAll()).isEqualTo(books);
+        assertThat(snapshot.findById(6L)).isNotNull();
+        assertThat(snapshot.findById(added.id())).isNull();
+        assertThat(snapshot.findBooksByAuthorIds(List.of(craigWalls.id()))).extracting(Book::id).containsExactly(5L, 6L);
+        assertThat(snapshot.search("architecture", 10)).doesNotContain(added, author);
+        assertThat(snapshot.findBooksPaginated(2, endCursor, null, null, BookOrder.TITLE, null, true).edges())
+                .extracting(edge -> edge.node().title())
+                .containsExactly("Clean Code", "Cloud Native Spring in Action");
+
+        assertThat(bookRepository.findBooksByAuthorIds(List.of(craigWalls.id()))).extracting(Book::id).containsExactly(5L, added.id());
+        assertThat(bookRepository.search("architecture", 10)).contains(added, author);
+        assertThat(bookRepository.findBooksPaginated(2, endCursor, null, null, BookOrder.TITLE, null).edges())
+                .extracting(edge -> edge.node().title())
+                .containsExactly("Clean Architecture", "Clean Code");
+    }
+
+    @Test
+    @DisplayName("Should page past books whose titles are longer than 64 KiB, each exactly once")
+    void shouldPagePastLongTitles() {
+        Author author = bookRepository.findAuthorByName("Craig Walls");
+        String ascii = "M".repeat(70_000);
+        bookRepository.createBook(ascii, author, 2025);
+        bookRepository.createBook(ascii + "N", author, 2025);
+        // two UTF-8 bytes per character, so any cut at a byte count could also split one
+        bookRepository.createBook("é".repeat(40_000), author, 2025);
+
+        List<Book> paged = new ArrayList<>();
+        String after = null;
+        for (int page = 0; page < 20; page++) {
+            BookConnection connection = bookRepository.findBooksPaginated(2, after, null, null, BookOrder.TITLE, null);
+            connection.edges().forEach(edge -> paged.add(edge.node()));
+            if (!connection.pageInfo().hasNextPage()) {
+                break;
+            }
+            after = connection.pageInfo().endCursor();
+        }
+        assertThat(paged)
+                .isEqualTo(bookRepository.findBooksPaginated(null, null, null, null, BookOrder.TITLE, null).edges()
+                        .stream()
+                        .map(edge -> edge.node())
+                        .toList())
+                .doesNotHaveDuplicates()
+                .hasSize(28);
+    }
+
+    @Test
+    @DisplayName("Should keep finding a snapshot's books and authors after later writes remove them from the indexes")
+    void shouldSearchPinnedSnapshotAfterDeletesAndReloads() {
+        BookRepository sharded = new BookRepository(shards(CatalogDataProperties.Storage.HEAP, 3));
+        sharded.init();
+        for (BookRepository repository : List.of(bookRepository, sharded)) {
+            CatalogSnapshot snapshot = repository.snapshot();
+            Book book = snapshot.findById(6L);
+            Author author = book.author();
+            BookFilter byAuthor = new BookFilter(author.name(), null);
+            List<Book> authorBooks = snapshot.findBooks(byAuthor);
+
+            repository.deleteBookById(6L);
+            assertThat(snapshot.search(book.title(), 10)).contains(book);
+            assertThat(repository.search(book.title(), 10)).doesNotContain(book);
+
+            repository.loadSynthetic(new CatalogDataProperties.Synthetic(3, 10, 5L, 1.1));
+            assertThat(snapshot.search(book.title(), 10)).contains(book);
+            assertThat(snapshot.search(author.name(), 10)).contains(author);
+            assertThat(snapshot.findBooks(byAuthor)).isEqualTo(authorBooks).contains(book);
+            assertThat(repository.snapshot().findBooks(byAuthor)).doesNotContain(book);
+        }
+        sharded.close();
+    }
+
+    @Test
+    @DisplayName("Should recover every acknowledged write from the snapshot and log after a restart")
+    void shouldRecoverDurableCatalog(@TempDir Path directory) throws Exception {
+        BookRepository repository = durableRepository(directory, 3);
+        Author author = repository.createAuthor("Durable Author");
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 50; i++) {
+                int n = i;
+                executor.submit(() -> repository.createBook("Durable " + n, author, 2000 + n));
+            }
+        }
+        repository.deleteBookById(1L);
+        Book last = repository.createBook("Deleted last", null, null);
+        repository.deleteBookById(last.id());
+        List<Book> books = repository.findAll();
+        List<Author> authors = repository.findAllAuthors();
+        repository.close();
+
+        BookRepository restarted = durableRepository(directory, 3);
+        assertThat(restarted.findAll()).isEqualTo(books);
+        assertThat(restarted.findAllAuthors()).isEqualTo(authors);
+        assertThat(restarted.findBooksByAuthorIds(List.of(author.id()))).hasSize(50);
+        assertThat(restarted.search("durable 4", 20)).isNotEmpty();
+        assertThat(restarted.createBook("After restart", null, 2025).id()).isGreaterThan(last.id());
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("Should log and keep a write whose change listener fails, and still notify the listeners after it")
+    void shouldIsolateFailingChangeListener(@TempDir Path directory) {
+        BookRepository repository = durableRepository(directory, 1_000);
+        List<CatalogChange> changes = new ArrayList<>();
+        repository.addChangeListener(change -> {
+            throw new IllegalStateException("listener failed");
+        });
+        repository.addChangeListener(changes::add);
+
+        Book book = repository.createBook("Despite the listener", repository.findAuthorById(1L), 2025);
+        assertThat(repository.findById(book.id())).isEqualTo(book);
+        assertThat(changes).singleElement().satisfies(change -> assertThat(change.addedBooks()).containsExactly(book));
+        repository.close();
+
+        BookRepository restarted = durableRepository(directory, 1_000);
+        assertThat(restarted.findById(book.id())).isEqualTo(book);
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("Should drop a torn record at the end of the log and keep appending after it")
+    void shouldTruncateTornLogTail(@TempDir Path directory) throws Exception {
+        BookRepository repository = durableRepository(directory, 1_000);
+        Book book = repository.createBook("Before the crash", repository.findAuthorById(1L), 2025);
+        repository.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        long intact = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 64, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        BookRepository restarted = durableRepository(directory, 1_000);
+        assertThat(Files.size(segment)).isEqualTo(intact);
+        assertThat(restarted.findAll()).hasSize(26).contains(book);
+        Book next = restarted.createBook("After the crash", null, null);
+        restarted.close();
+
+        BookRepository again = durableRepository(directory, 1_000);
+        assertThat(again.findById(next.id())).isEqualTo(next);
+        again.close();
+    }
+
+    @Test
+    @DisplayName("Should recover the loaded catalog when the process dies right after the first write")
+    void shouldRecoverLoadedCatalogWithoutClosing(@TempDir Path directory) {
+        BookRepository repository = durableRepository(directory, 1_000);
+        Author author = repository.findAuthorById(1L);
+        Book book = repository.createBook("Acknowledged", author, 2025);
+        List<Book> books = repository.findAll();
+
+        // no close(): the second instance finds only what was on disk when the write was acknowledged
+        BookRepository restarted = durableRepository(directory, 1_000);
+        assertThat(restarted.findAll()).isEqualTo(books).hasSize(26);
+        assertThat(restarted.findById(book.id()).author()).isEqualTo(author);
+        restarted.close();
+        repository.close();
+    }
+
+    @Test
+    @DisplayName("Should answer every read the same from columnar storage as from heap storage")
+    void shouldMatchHeapStorageWithColumnarStorage() {
+        CatalogDataProperties.Synthetic spec = new CatalogDataProperties.Synthetic(200, 10_000, 11L, 1.1);
+        BookRepository heap = new BookRepository(storage(CatalogDataProperties.Storage.HEAP));
+        BookRepository columnar = new BookRepository(storage(CatalogDataProperties.Storage.COLUMNAR));
+        heap.loadSynthetic(spec);
+        columnar.loadSynthetic(spec);
+
+        for (BookRepository repository : List.of(heap, columnar)) {
+            Author author = repository.findAuthorById(7L);
+            repository.createBook("Columns and Rows", author, 2024);
+            repository.createBook("Columns and Rows", null, null);
+            repository.deleteBookById(5_000L);
+            repository.deleteBookById(10_001L);
+        }
+
+        assertThat(columnar.findAll()).isEqualTo(heap.findAll());
+        assertThat(columnar.findById(10_002L)).isEqualTo(heap.findById(10_002L)).isNotNull();
+        assertThat(columnar.findById(5_000L)).isNull();
+        assertThat(columnar.findBooksByAuthorIds(List.of(7L, 8L))).isEqualTo(heap.findBooksByAuthorIds(List.of(7L, 8L)));
+        assertThat(columnar.findBooks(new BookFilter("a", 2000))).isEqualTo(heap.findBooks(new BookFilter("a", 2000)));
+        assertThat(columnar.search("columns", 5)).isEqualTo(heap.search("columns", 5));
+        for (BookOrder order : BookOrder.values()) {
+            BookConnection expected = heap.findBooksPaginated(20, null, null, null, order, null);
+            BookConnection actual = columnar.findBooksPaginated(20, null, null, null, order, null);
+            assertThat(actual.pageInfo()).isEqualTo(expected.pageInfo());
+            for (int i = 0; i < expected.edges().size(); i++) {
+                assertThat(actual.edges().get(i).node()).isEqualTo(expected.edges().get(i).node());
+            }
+        }
+
+        assertThat(columnar.footprint().storage()).isEqualTo(CatalogDataProperties.Storage.COLUMNAR);
+        assertThat(columnar.footprint().heapBytes()).isLessThan(heap.footprint().heapBytes() / 2);
+        assertThat(columnar.footprint().offHeapBytes()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Should answer every read the same from a sharded catalog as from a single one")
+    void shouldMatchSingleCatalogWithShardedCatalog() {
+        CatalogDataProperties.Synthetic spec = new CatalogDataProperties.Synthetic(200, 10_000, 13L, 1.1);
+        BookRepository single = new BookRepository(shards(CatalogDataProperties.Storage.HEAP, 1));
+        BookRepository sharded = new BookRepository(shards(CatalogDataProperties.Storage.HEAP, 4));
+        BookRepository shardedColumnar = new BookRepository(shards(CatalogDataProperties.Storage.COLUMNAR, 3));
+
+        for (BookRepository repository : List.of(single, sharded, shardedColumnar)) {
+            repository.loadSynthetic(spec);
+            repository.createBook("Shards and Merges", repository.findAuthorById(7L), 2024);
+            repository.createBook("Shards and Merges", null, null);
+            String authorName = repository.findAuthorById(9L).name();
+            repository.createBooks(List.of(new CreateBookInput("Scatter and Gather", authorName, 2025),
+                    new CreateBookInput("Scatter and Gather", null, 2025)));
+            repository.deleteBooks(List.of(5_000L, 6_000L));
+            repository.deleteBookById(10_001L);
+        }
+
+        for (BookRepository repository : List.of(sharded, shardedColumnar)) {
+            assertThat(repository.findAll()).isEqualTo(single.findAll());
+            assertThat(repository.iterateAll()).toIterable().containsExactlyElementsOf(single.findAll());
+            assertThat(repository.findById(10_002L)).isEqualTo(single.findById(10_002L)).isNotNull();
+            assertThat(repository.findById(5_000L)).isNull();
+            assertThat(repository.findBooksByAuthorIds(List.of(7L, 8L, 9L)))
+                    .containsExactlyInAnyOrderElementsOf(single.findBooksByAuthorIds(List.of(7L, 8L, 9L)));
+            assertThat(repository.findBooks(new BookFilter("a", 2000))).isEqualTo(single.findBooks(new BookFilter("a", 2000)));
+            assertThat(repository.findBooks(new BookFilter(null, 2024))).isEqualTo(single.findBooks(new BookFilter(null, 2024)));
+            assertThat(repository.search("gather", 5)).isEqualTo(single.search("gather", 5));
+            assertThat(repository.search("in", 20)).isEqualTo(single.search("in", 20));
+
+            for (BookOrder order : BookOrder.values()) {
+                for (BookFilter filter : Arrays.asList(null, new BookFilter("an", 2010))) {
+                    String after = null;
+                    for (int page = 0; page < 3; page++) {
+                        BookConnection expected = single.findBooksPaginated(50, after, null, null, order, filter);
+                        assertThat(repository.findBooksPaginated(50, after, null, null, order, filter)).isEqualTo(expected);
+                        after = expected.pageInfo().endCursor();
+                    }
+                    assertThat(repository.findBooksPaginated(null, null, 30, after, order, filter))
+                            .isEqualTo(single.findBooksPaginated(null, null, 30, after, order, filter));
+                    assertThat(repository.findBooksPaginated(20, after, 5, null, order, filter))
+                            .isEqualTo(single.findBooksPaginated(20, after, 5, null, order, filter));
+                }
+            }
+        }
+        sharded.close();
+        shardedColumnar.close();
+    }
+
+    @Test
+    @DisplayName("Should load only the node's partition, so the nodes together hold the whole catalog once")
+    void shouldPartitionCatalogOverNodes() {
+        CatalogDataProperties.Synthetic spec = new CatalogDataProperties.Synthetic(200, 10_000, 17L, 1.1);
+        BookRepository whole = new BookRepository(storage(CatalogDataProperties.Storage.HEAP));
+        whole.loadSynthetic(spec);
+
+        List<List<Book>> filtered = new ArrayList<>();
+        List<Book> union = new ArrayList<>();
+        for (int index = 0; index < 3; index++) {
+            BookRepository node = new BookRepository(new CatalogDataProperties(null, null, null, null, 1,
+                    new CatalogDataProperties.Node(index, 3)));
+            node.loadSynthetic(spec);
+            assertThat(node.findAll()).isNotEmpty().allSatisfy(book -> assertThat(
+                    node.findBooksByAuthorIds(List.of(book.author().id()))).contains(book));
+            assertThat(node.findAllAuthors()).isEqualTo(whole.findAllAuthors());
+            union.addAll(node.findAll());
+            filtered.add(node.findBooks(new BookFilter("an", 2010)));
+        }
+
+        assertThat(union).containsExactlyInAnyOrderElementsOf(whole.findAll());
+        List<Book> gathered = new ArrayList<>();
+        filtered.forEach(gathered::addAll);
+        gathered.sort(Comparator.comparing(Book::id));
+        assertThat(gathered).isEqualTo(whole.findBooks(new BookFilter("an", 2010)));
+        assertThatThrownBy(() -> new CatalogDataProperties.Node(3, 3)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should refuse writes on a node of a partitioned catalog, whose id counters only know its own books")
+    void shouldRefuseWritesOnNode() {
+        BookRepository node = new BookRepository(new CatalogDataProperties(null, null, null, null, 1,
+                new CatalogDataProperties.Node(1, 2)));
+        node.init();
+        Author author = node.findAllAuthors().getFirst();
+        List<Book> books = node.findAll();
+
+        assertThatThrownBy(() -> node.createBook("Local", author, 2025)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> node.createAuthor("Local")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> node.createBooks(List.of(new CreateBookInput("Local", author.name(), 2025))))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> node.deleteBookById(1L)).isInstanceOf(IllegalStateException.class);
+        assertThat(node.findAll()).isEqualTo(books);
+    }
+
+    private static CatalogDataProperties storage(CatalogDataProperties.Storage storage) {
+        return new CatalogDataProperties(null, null, null, storage, 1, null);
+    }
+
+    private static CatalogDataProperties shards(CatalogDataProperties.Storage storage, int shards) {
+        return new CatalogDataProperties(null, null, null, storage, shards, null);
+    }
+
+    private static BookRepository durableRepository(Path directory, int snapshotEvery) {
+        BookRepository repository = new BookRepository(new CatalogDataProperties(null, null,
+                new CatalogDataProperties.Durable(true, directory.toString(), snapshotEvery), null, 1, null));
+        repository.init();
+        return repository;
+    }
+
+}
@@ -1,24 +1,41 @@
 package books;
 
+import books.api.BookResponseCache;
 import books.api.BookRestController;
+import books.api.ResponseCacheProperties;
 import books.book.Author;
 import books.book.Book;
 import books.book.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Description;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(BookRestController.class)
+@Import(BookResponseCache.class)
+@EnableConfigurationProperties(ResponseCacheProperties.class)
 class BookRestControllerTest {
 
     @MockitoBean
@@ -29,6 +46,14 @@ class BookRestControllerTest {
 
     private final String API_VERSION_HEADER = "X-API-Version";
 
+    // responses are cached per data version, so every test gets a version of its own
+    private static final AtomicLong dataVersion = new AtomicLong();
+
+    @BeforeEach
+    void newDataVersion() {
+        when(bookRepository.dataVersion()).thenReturn(dataVersion.incrementAndGet());
+    }
+
     @Test
     void shouldReturnBooksV1() throws Exception {
         // Given
@@ -100,6 +125,24 @@ class BookRestControllerTest {
                 .andExpect(jsonPath("$[0].publishedYear").value(2023));
     }
 
+    @Test
+    @Description("The default body writes every field of a book exactly once")
+    void shouldReturnCompleteDefaultJson() throws Exception {
+        // Given
+        var author = new Author(1L, "Test Author");
+        when(bookRepository.findAll()).thenReturn(List.of(getTestBook(), new Book(2L, "Say \"Hi\"", author, null)));
+
+        // When & Then
+        mockMvc.perform(get("/api/books/")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().string("["
+                        + "{\"id\":1,\"title\":\"Test Book\",\"author\":{\"id\":1,\"name\":\"Test Author\"},\"publishedYear\":2023},"
+                        + "{\"id\":2,\"title\":\"Say \\\"Hi\\\"\",\"author\":{\"id\":1,\"name\":\"Test Author\"},\"publishedYear\":null}"
+                        + "]"));
+    }
+
     @Test
     void shouldReturnEmptyListWhenNoBooksExist() throws Exception {
         // Given
@@ -115,6 +158,172 @@ class BookRestControllerTest {
                 .andExpect(jsonPath("$").isEmpty());
     }
 
+    @Test
+    void shouldStreamBooksAsNdjson() throws Exception {
+        // Given
+        var author = new Author(1L, "Test Author");
+        when(bookRepository.iterateAll()).thenAnswer(invocation ->
+                List.of(getTestBook(), new Book(2L, "Say \"Hi\"", author, null)).iterator());
+
+        // When
+        MvcResult result = mockMvc.perform(get("/api/books/")
+                        .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string("""
+                        {"id":1,"title":"Test Book","author":{"id":1,"name":"Test Author"},"publishedYear":2023}
+                        {"id":2,"title":"Say \\"Hi\\"","author":{"id":1,"name":"Test Author"},"publishedYear":null}
+                        """));
+    }
+
+    @Test
+    void shouldStreamBooksV3() throws Exception {
+        // Given
+        when(bookRepository.iterateAll()).thenAnswer(invocation -> List.of(getTestBook()).iterator());
+
+        // When
+        MvcResult result = mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "3.0"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string("""
+                        {"id":1,"title":"Test Book","author":{"id":1,"name":"Test Author"},"publishedYear":2023}
+                        """));
+    }
+
+    @Test
+    void shouldReturnOnlyRequestedFields() throws Exception {
+        // Given
+        when(bookRepository.iterateAll()).thenAnswer(invocation -> List.of(getTestBook()).iterator());
+
+        // When
+        MvcResult result = mockMvc.perform(get("/api/books/")
+                        .param("fields", "title,author.name,id")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().string("[{\"id\":1,\"title\":\"Test Book\",\"author\":{\"name\":\"Test Author\"}}]"));
+    }
+
+    @Test
+    void shouldRejectUnknownFields() throws Exception {
+        mockMvc.perform(get("/api/books/")
+                        .param("fields", "title,isbn")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldReturnNotModifiedForMatchingETag() throws Exception {
+        // Given
+        when(bookRepository.findAll()).thenReturn(List.of(getTestBook()));
+        String etag = mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "2.0")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // When & Then
+        mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "2.0")
+                        .header("If-None-Match", etag)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(bookRepository, times(1)).findAll();
+    }
+
+    @Test
+    void shouldServeNewETagAfterDataChanges() throws Exception {
+        // Given
+        when(bookRepository.findAll()).thenReturn(List.of(getTestBook()));
+        String etag = mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "1.0")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // When
+        when(bookRepository.dataVersion()).thenReturn(dataVersion.incrementAndGet());
+        when(bookRepository.findAll()).thenReturn(List.of());
+
+        // Then
+        mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "1.0")
+                        .header("If-None-Match", etag)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)))
+                .andExpect(jsonPath("$").isEmpty());
+    }
+
+    @Test
+    void shouldServeCompressedBooksForAcceptEncoding() throws Exception {
+        // Given
+        when(bookRepository.findAll()).thenReturn(List.of(getTestBook()));
+
+        // When
+        byte[] body = mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "1.0")
+                        .header("Accept-Encoding", "br;q=1.0, gzip;q=0.8, *;q=0.1")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Vary", "Accept-Encoding"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Then
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(
+                    "[{\"id\":1,\"title\":\"Test Book\",\"author\":{\"id\":1,\"name\":\"Test Author\"},\"publishedYear\":2023}]");
+        }
+    }
+
+    @Test
+    void shouldRejectRequestWhenNoEncodingIsAcceptable() throws Exception {
+        when(bookRepository.findAll()).thenReturn(List.of(getTestBook()));
+
+        mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "1.0")
+                        .header("Accept-Encoding", "identity;q=0, *;q=0")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    void shouldShareCachedBodyAcrossApiVersions() throws Exception {
+        // Given
+        when(bookRepository.findAll()).thenReturn(List.of(getTestBook()));
+        String etag = mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "1.0")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        // When & Then
+        mockMvc.perform(get("/api/books/")
+                        .header(API_VERSION_HEADER, "2.0")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag));
+        verify(bookRepository, times(1)).findAll();
+    }
+
     private Book getTestBook() {
         var author = new Author(1L, "Test Author");
         return new Book(1L, "Test Book", author, 2023);
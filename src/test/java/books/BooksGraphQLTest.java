@@ -1,11 +1,32 @@
 package books;
 
+import books.book.Book;
+import books.book.BookRepository;
+import books.graphql.ParallelResolverInstrumentation;
+import books.subscription.BookChangeHub;
+import graphql.schema.DataFetcher;
+import graphql.schema.FieldCoordinates;
+import graphql.schema.GraphQLSchema;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureGraphQlTester;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.graphql.execution.GraphQlSource;
 import org.springframework.graphql.test.tester.GraphQlTester;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 
 @SpringBootTest
 @AutoConfigureGraphQlTester
@@ -15,6 +36,18 @@ public class BooksGraphQLTest {
     @Autowired
     private GraphQlTester graphQlTester;
 
+    @MockitoSpyBean
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookChangeHub bookChangeHub;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private GraphQlSource graphQlSource;
+
     @Test
     @DisplayName("Should return all books when querying books")
     void shouldReturnAllBooks() {
@@ -145,6 +178,158 @@ public class BooksGraphQLTest {
                 });
     }
 
+    @Test
+    @DisplayName("Should load books for every author with a single batched repository call")
+    void shouldBatchLoadBooksForAuthors() {
+        String query = """
+            query {
+                authors {
+                    name
+                    books {
+                        title
+                    }
+                }
+            }
+            """;
+
+        // the loader reads the query's pinned snapshot, so the batch is counted by its metric
+        var before = meterRegistry.find("books.graphql.dataloader.batch.size").tag("loader", "booksByAuthor").summary();
+        long batchesBefore = before == null ? 0 : before.count();
+        double authorsBefore = before == null ? 0 : before.totalAmount();
+
+        graphQlTester.document(query)
+                .execute()
+                .path("authors")
+                .entityList(Object.class)
+                .hasSize(24)
+                .path("authors[2].books")
+                .entityList(Object.class)
+                .hasSizeGreaterThan(0);
+
+        var batches = meterRegistry.get("books.graphql.dataloader.batch.size").tag("loader", "booksByAuthor").summary();
+        assertThat(batches.count()).isEqualTo(batchesBefore + 1);
+        assertThat(batches.totalAmount()).isEqualTo(authorsBefore + 24);
+    }
+
+    @Test
+    @DisplayName("Should read a pinned connection's later pages from the version of its first page")
+    void shouldPageFromPinnedVersion() {
+        String query = """
+            query PinnedPage($after: String, $pinned: Boolean) {
+                booksPaginated(first: 2, after: $after, orderBy: TITLE, pinned: $pinned) {
+                    edges {
+                        node {
+                            title
+                        }
+                    }
+                    pageInfo {
+                        endCursor
+                    }
+                }
+            }
+            """;
+
+        String pinnedCursor = graphQlTester.document(query)
+                .variable("pinned", true)
+                .execute()
+                .path("booksPaginated.pageInfo.endCursor")
+                .entity(String.class)
+                .get();
+        String plainCursor = graphQlTester.document(query)
+                .execute()
+                .path("booksPaginated.pageInfo.endCursor")
+                .entity(String.class)
+                .get();
+
+        Book added = bookRepository.createBook("Clean Architecture", bookRepository.findAuthorByName("Robert C. Martin"), 2017);
+        try {
+            graphQlTester.document(query)
+                    .variable("after", pinnedCursor)
+                    .variable("pinned", true)
+                    .execute()
+                    .path("booksPaginated.edges[*].node.title")
+                    .entityList(String.class)
+                    .containsExactly("Clean Code", "Cloud Native Spring in Action");
+
+            graphQlTester.document(query)
+                    .variable("after", plainCursor)
+                    .execute()
+                    .path("booksPaginated.edges[*].node.title")
+                    .entityList(String.class)
+                    .containsExactly("Clean Architecture", "Clean Code");
+        } finally {
+            bookRepository.deleteBookById(added.id());
+        }
+    }
+
+    @Test
+    @DisplayName("Should return ranked search results bounded by the limit argument")
+    void shouldSearchWithLimit() {
+        String query = """
+            query {
+                search(text: "spring", limit: 2) {
+                    ... on Book {
+                        title
+                    }
+                    ... on Author {
+                        name
+                    }
+                }
+            }
+            """;
+
+        graphQlTester.document(query)
+                .execute()
+                .path("search")
+                .entityList(Object.class)
+                .hasSize(2)
+                .path("search[0].title")
+                .entity(String.class)
+                .isEqualTo("Spring Data JPA");
+    }
+
+    @Test
+    @DisplayName("Should add and delete books in bulk, resolving each author name once")
+    void shouldAddAndDeleteBooksInBulk() {
+        String addBooks = """
+            mutation AddBooks($input: [CreateBookInput!]!) {
+                addBooks(input: $input) {
+                    id
+                    title
+                    author {
+                        name
+                    }
+                }
+            }
+            """;
+        List<Map<String, Object>> input = List.of(
+                Map.of("title", "Bulk One", "authorName", "Craig Walls", "publishedYear", 2025),
+                Map.of("title", "Bulk Two", "authorName", "craig walls"),
+                Map.of("title", "Bulk Three", "authorName", "Nobody"));
+
+        GraphQlTester.Response added = graphQlTester.document(addBooks).variable("input", input).execute();
+        List<String> ids = added.path("addBooks[*].id").entityList(String.class).hasSize(3).get();
+        added.path("addBooks[0].author.name").entity(String.class).isEqualTo("Craig Walls");
+        added.path("addBooks[1].author.name").entity(String.class).isEqualTo("Craig Walls");
+        added.path("addBooks[2].author").valueIsNull();
+        assertThat(Long.parseLong(ids.get(1))).isEqualTo(Long.parseLong(ids.get(0)) + 1);
+
+        List<String> toDelete = new ArrayList<>(ids);
+        toDelete.add("999999");
+        graphQlTester.document("mutation Delete($ids: [ID!]!) { deleteBooks(ids: $ids) }")
+                .variable("ids", toDelete)
+                .execute()
+                .path("deleteBooks")
+                .entityList(String.class)
+                .containsExactly(ids.toArray(String[]::new));
+
+        graphQlTester.document("{ books { id } }")
+                .execute()
+                .path("books")
+                .entityList(Object.class)
+                .hasSize(25);
+    }
+
     @Test
     @DisplayName("Should return paginated books with forward pagination")
     void shouldReturnPaginatedBooksForward() {
@@ -308,6 +493,43 @@ public class BooksGraphQLTest {
                 .isEqualTo(true);
     }
 
+    @Test
+    @DisplayName("Should page through a filtered connection in title order")
+    void shouldPageSortedAndFilteredBooks() {
+        String query = """
+            query GetSortedPage($after: String) {
+                booksPaginated(first: 2, after: $after, orderBy: TITLE, filter: {publishedAfter: 2020}) {
+                    edges {
+                        node {
+                            title
+                            publishedYear
+                        }
+                    }
+                    pageInfo {
+                        hasNextPage
+                        endCursor
+                    }
+                }
+            }
+            """;
+
+        String endCursor = graphQlTester.document(query)
+                .execute()
+                .path("booksPaginated.edges[*].node.title")
+                .entityList(String.class)
+                .containsExactly("Building Microservices with Spring Boot", "Cloud Native Spring in Action")
+                .path("booksPaginated.pageInfo.endCursor")
+                .entity(String.class)
+                .get();
+
+        graphQlTester.document(query)
+                .variable("after", endCursor)
+                .execute()
+                .path("booksPaginated.edges[*].node.title")
+                .entityList(String.class)
+                .containsExactly("Java: The Complete Reference", "JUnit in Action");
+    }
+
     @Test
     @DisplayName("Should handle edge cases in pagination")
     void shouldHandlePaginationEdgeCases() {
@@ -364,4 +586,76 @@ public class BooksGraphQLTest {
                 .hasSize(0);
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Should run two blocking root fields of the real controllers at the same time")
+    void shouldResolveBlockingRootFieldsInParallel() {
+        GraphQLSchema schema = graphQlSource.schema();
+        for (String field : List.of("books", "authors", "booksWithFilter", "search")) {
+            DataFetcher<?> fetcher = schema.getCodeRegistry().getDataFetcher(
+                    FieldCoordinates.coordinates("Query", field), schema.getQueryType().getFieldDefinition(field));
+            assertThat(ParallelResolverInstrumentation.isBlockingController(fetcher)).as(field).isTrue();
+        }
+
+        // each resolver checks its snapshot against the cache once it runs; both checks wait for each other, which
+        // only succeeds when the two fields are resolved on different threads at once
+        CountDownLatch both = new CountDownLatch(2);
+        List<Boolean> overlapped = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            both.countDown();
+            overlapped.add(both.await(5, TimeUnit.SECONDS));
+            return invocation.callRealMethod();
+        }).when(bookRepository).isCurrent(any());
+
+        String query = """
+            query {
+                josh: booksWithFilter(filter: { authorName: "Josh Long" }) { title }
+                craig: booksWithFilter(filter: { authorName: "Craig Walls" }) { title }
+            }
+            """;
+
+        graphQlTester.document(query)
+                .execute()
+                .path("craig")
+                .entityList(Object.class)
+                .hasSizeGreaterThan(0);
+        assertThat(overlapped).isNotEmpty().containsOnly(true);
+    }
+
+    @Test
+    @DisplayName("Should push added books to a filtered subscription")
+    void shouldPushAddedBooksToSubscribers() throws Exception {
+        String subscription = """
+            subscription {
+                booksChanged(filter: { authorName: "Craig Walls" }) {
+                    added {
+                        title
+                        author {
+                            name
+                        }
+                    }
+                    missed
+                }
+            }
+            """;
+
+        int subscribers = bookChangeHub.subscriberCount();
+        var titles = graphQlTester.document(subscription)
+                .executeSubscription()
+                .toFlux("booksChanged.added[0].title", String.class)
+                .next()
+                .toFuture();
+        while (bookChangeHub.subscriberCount() == subscribers) {
+            Thread.sleep(5);
+        }
+
+        Book other = bookRepository.createBook("Not By Craig", bookRepository.findAuthorByName("Josh Long"), 2025);
+        Book book = bookRepository.createBook("Spring Subscriptions in Action", bookRepository.findAuthorByName("Craig Walls"), 2025);
+        try {
+            assertThat(titles.get(5, TimeUnit.SECONDS)).isEqualTo("Spring Subscriptions in Action");
+        } finally {
+            bookRepository.deleteBookById(other.id());
+            bookRepository.deleteBookById(book.id());
+        }
+    }
+
+}
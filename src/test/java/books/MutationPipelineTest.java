@@ -0,0 +1,213 @@
+package books;
+
+import books.book.Book;
+import books.book.BookRepository;
+import books.book.CatalogChange;
+import books.book.CreateBookInput;
+import books.book.MutationPipeline;
+import books.book.MutationPipelineProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Mutation Pipeline Tests")
+class MutationPipelineTest {
+
+    private BookRepository repository;
+    private MutationPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        repository = new BookRepository();
+        repository.init();
+        pipeline = new MutationPipeline(repository, new MutationPipelineProperties(true, 1024, 512));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pipeline.close();
+    }
+
+    @Test
+    @DisplayName("Should apply everything queued while the writer is busy as one write")
+    void shouldCoalesceQueuedMutations() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CatalogChange> changes = Collections.synchronizedList(new ArrayList<>());
+        repository.addChangeListener(change -> {
+            changes.add(change);
+            if (changes.size() == 1) {
+                awaitQuietly(release);
+            }
+        });
+
+        CompletableFuture<Book> first = pipeline.addBook("First", "Craig Walls", 2025);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (changes.isEmpty() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+
+        List<CompletableFuture<Book>> added = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Boolean>> deletes;
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 50; i++) {
+                int n = i;
+                executor.submit(() -> added.add(pipeline.addBook("Queued " + n, "Josh Long", 2025)));
+            }
+        }
+        deletes = List.of(pipeline.deleteBook(1L), pipeline.deleteBook(1L), pipeline.deleteBook(999L));
+        assertThat(first).isNotDone();
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS).author().name()).isEqualTo("Craig Walls");
+        List<Book> books = new ArrayList<>();
+        for (CompletableFuture<Book> future : added) {
+            books.add(future.get(5, TimeUnit.SECONDS));
+        }
+        assertThat(deletes.get(0).get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(deletes.get(1).get()).isFalse();
+        assertThat(deletes.get(2).get()).isFalse();
+
+        assertThat(changes).hasSize(2);
+        assertThat(changes.get(1).addedBooks()).containsExactlyInAnyOrderElementsOf(books);
+        assertThat(changes.get(1).deletedBooks()).extracting(Book::id).containsExactly(1L);
+        assertThat(books).extracting(Book::id).doesNotHaveDuplicates().allMatch(id -> repository.findById(id) != null);
+        assertThat(repository.findAll()).hasSize(25 + 1 + 50 - 1);
+    }
+
+    @Test
+    @DisplayName("Should fail only the mutation that cannot be applied and still apply the rest of its batch")
+    void shouldIsolateFailingMutation() throws Exception {
+        BookRepository failing = new BookRepository() {
+            @Override
+            public CatalogChange apply(List<CreateBookInput> inputs, Collection<Long> deleteIds) {
+                if (inputs.stream().anyMatch(input -> "Poison".equals(input.title()))) {
+                    throw new IllegalArgumentException("Poison");
+                }
+                return super.apply(inputs, deleteIds);
+            }
+        };
+        failing.init();
+        MutationPipeline batching = new MutationPipeline(failing, new MutationPipelineProperties(true, 1024, 512));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        failing.addChangeListener(change -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+
+        CompletableFuture<Book> first = batching.addBook("First", "Josh Long", 2025);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        List<CompletableFuture<Book>> good = List.of(batching.addBook("Good 1", "Josh Long", 2025),
+                batching.addBook("Good 2", null, 2025));
+        CompletableFuture<Book> poison = batching.addBook("Poison", "Josh Long", 2025);
+        CompletableFuture<Boolean> delete = batching.deleteBook(1L);
+        release.countDown();
+
+        assertThatThrownBy(() -> poison.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(first.get(5, TimeUnit.SECONDS)).isNotNull();
+        for (CompletableFuture<Book> future : good) {
+            assertThat(failing.findById(future.get(5, TimeUnit.SECONDS).id())).isNotNull();
+        }
+        assertThat(delete.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(failing.findAll()).hasSize(25 + 1 + 2 - 1);
+        batching.close();
+    }
+
+    @Test
+    @DisplayName("Should fail the batch and every later mutation when an Error stops the writer")
+    void shouldFailPendingMutationsWhenWriterDies() throws Exception {
+        BookRepository failing = new BookRepository() {
+            @Override
+            public CatalogChange apply(List<CreateBookInput> inputs, Collection<Long> deleteIds) {
+                throw new StackOverflowError("too deep");
+            }
+        };
+        failing.init();
+        MutationPipeline dying = new MutationPipeline(failing, new MutationPipelineProperties(true, 1024, 512));
+
+        CompletableFuture<Book> first = dying.addBook("First", "Josh Long", 2025);
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+
+        CompletableFuture<Boolean> later;
+        try {
+            later = dying.deleteBook(1L);
+        } catch (IllegalStateException e) {
+            later = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Boolean> delete = later;
+        assertThatThrownBy(() -> delete.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThatThrownBy(() -> dying.addBook("After", "Josh Long", 2025))
+                .isInstanceOf(IllegalStateException.class)
+                .hasRootCauseInstanceOf(StackOverflowError.class);
+        assertThat(failing.findById(1L)).isNotNull();
+        dying.close();
+    }
+
+    @Test
+    @DisplayName("Should complete a batch that is already committed normally when the pipeline closes")
+    void shouldCompleteCommittedBatchOnClose() throws Exception {
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        repository.addChangeListener(change -> {
+            committed.countDown();
+            awaitQuietly(release);
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+
+        CompletableFuture<Book> book = pipeline.addBook("Last", "Josh Long", 2025);
+        assertThat(committed.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Void> closing = CompletableFuture.runAsync(() -> {
+            try {
+                pipeline.close();
+            } catch (InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertThat(closing).isNotDone();
+        release.countDown();
+
+        closing.get(5, TimeUnit.SECONDS);
+        assertThat(book).isCompleted();
+        assertThat(repository.findById(book.get().id())).isEqualTo(book.get());
+        assertThat(interrupted).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should write on the caller's thread when the pipeline is disabled")
+    void shouldWriteDirectlyWhenDisabled() throws Exception {
+        MutationPipeline direct = new MutationPipeline(repository, new MutationPipelineProperties(false, 0, 0));
+
+        CompletableFuture<Book> book = direct.addBook("Direct", "Dan Vega", 2025);
+
+        assertThat(book).isDone();
+        assertThat(repository.findById(book.get().id())).isEqualTo(book.get());
+        assertThat(direct.deleteBook(book.get().id())).isCompletedWithValue(true);
+        direct.close();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package books;
+
+import books.graphql.ParallelExecutionProperties;
+import books.graphql.ParallelResolverInstrumentation;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.DataFetcher;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Parallel Resolver Tests")
+class ParallelResolverTest {
+
+    private static final String BOTH = "{ books { title } authors { name } }";
+
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    @Test
+    @DisplayName("Should resolve independent root fields in about the time of the slowest one")
+    void shouldResolveSiblingsInParallel() {
+        GraphQL graphQl = graphQl(true, Duration.ofSeconds(5), 8, sleep(300), sleep(300));
+
+        long start = System.nanoTime();
+        ExecutionResult result = graphQl.execute(BOTH);
+
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(550));
+    }
+
+    @Test
+    @DisplayName("Should cap the number of resolvers a request runs at once")
+    void shouldCapFanOut() {
+        GraphQL graphQl = graphQl(true, Duration.ofSeconds(5), 1, sleep(200), sleep(200));
+
+        long start = System.nanoTime();
+        ExecutionResult result = graphQl.execute(BOTH);
+
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(400));
+    }
+
+    @Test
+    @DisplayName("Should cancel and interrupt sibling resolvers when one fails")
+    void shouldCancelSiblingsOnFailure() throws Exception {
+        DataFetcher<Object> failing = env -> {
+            Thread.sleep(100);
+            throw new IllegalStateException("backend down");
+        };
+        GraphQL graphQl = graphQl(true, Duration.ofSeconds(5), 8, failing, sleep(5_000));
+
+        long start = System.nanoTime();
+        ExecutionResult result = graphQl.execute(BOTH);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(result.getErrors()).hasSize(2);
+        assertThat(interrupted.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should fail resolvers that outlive the request deadline")
+    void shouldEnforceDeadline() {
+        GraphQL graphQl = graphQl(true, Duration.ofMillis(200), 8, sleep(0), sleep(5_000));
+
+        long start = System.nanoTime();
+        ExecutionResult result = graphQl.execute(BOTH);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(result.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getPath()).containsExactly("authors"));
+    }
+
+    @Test
+    @DisplayName("Should resolve fields one after another when disabled")
+    void shouldRunSeriallyWhenDisabled() {
+        GraphQL graphQl = graphQl(false, Duration.ofSeconds(5), 8, sleep(200), sleep(200));
+
+        long start = System.nanoTime();
+        ExecutionResult result = graphQl.execute(BOTH);
+
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(400));
+    }
+
+    private DataFetcher<Object> sleep(long millis) {
+        return env -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return List.of();
+        };
+    }
+
+    private GraphQL graphQl(boolean enabled, Duration timeout, int maxFanOut, DataFetcher<Object> books,
+                            DataFetcher<Object> authors) {
+        var schemaFile = new InputStreamReader(getClass().getResourceAsStream("/graphql/schema.graphqls"), StandardCharsets.UTF_8);
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", type -> type.dataFetcher("books", books).dataFetcher("authors", authors))
+                .type("SearchItem", type -> type.typeResolver(env -> null))
+                .build();
+        var schema = new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(schemaFile), wiring);
+        var properties = new ParallelExecutionProperties(enabled, timeout, maxFanOut);
+        DataFetcher<?>[] slow = {books, authors};
+        var instrumentation = new ParallelResolverInstrumentation(properties,
+                fetcher -> fetcher == slow[0] || fetcher == slow[1]);
+        return GraphQL.newGraphQL(schema).instrumentation(instrumentation).build();
+    }
+
+}
@@ -0,0 +1,87 @@
+package books;
+
+import books.graphql.PersistedDocumentProvider;
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.parser.Parser;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Persisted Query Tests")
+class PersistedDocumentProviderTest {
+
+    private static final String QUERY = "query { books { title } }";
+
+    private final PersistedDocumentProvider provider = new PersistedDocumentProvider(10);
+    private final AtomicInteger parses = new AtomicInteger();
+    private final Function<ExecutionInput, PreparsedDocumentEntry> parser = input -> {
+        parses.incrementAndGet();
+        return new PreparsedDocumentEntry(Parser.parse(input.getQuery()));
+    };
+
+    @Test
+    @DisplayName("Should ask for the full text when a hash is unknown, then serve the hash alone")
+    void shouldRegisterAndServePersistedQueries() {
+        ExecutionInput hashOnly = input("", PersistedDocumentProvider.sha256(QUERY));
+
+        assertThat(provider.getDocumentAsync(hashOnly, parser).join().getErrors())
+                .singleElement()
+                .satisfies(error -> assertThat(error.getMessage()).isEqualTo("PersistedQueryNotFound"));
+
+        assertThat(provider.getDocumentAsync(input(QUERY, PersistedDocumentProvider.sha256(QUERY)), parser).join().hasErrors()).isFalse();
+        assertThat(provider.getDocumentAsync(hashOnly, parser).join().getDocument()).isNotNull();
+        assertThat(parses).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Should treat graphql-java's persisted query marker as a request without text")
+    void shouldTreatMarkerAsHashOnly() {
+        String hash = PersistedDocumentProvider.sha256(QUERY);
+        ExecutionInput marker = input(PersistedQuerySupport.PERSISTED_QUERY_MARKER, hash.toUpperCase(Locale.ROOT));
+
+        assertThat(provider.getDocumentAsync(marker, parser).join().getErrors())
+                .singleElement()
+                .satisfies(error -> assertThat(error.getMessage()).isEqualTo("PersistedQueryNotFound"));
+
+        provider.getDocumentAsync(input(QUERY, hash), parser).join();
+        assertThat(provider.getDocumentAsync(marker, parser).join().getDocument()).isNotNull();
+        assertThat(parses).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Should reject a hash that does not match the query text")
+    void shouldRejectMismatchedHash() {
+        PreparsedDocumentEntry entry = provider.getDocumentAsync(input(QUERY, PersistedDocumentProvider.sha256("query { authors { name } }")), parser).join();
+
+        assertThat(entry.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getMessage()).isEqualTo("PersistedQueryIdInvalid"));
+        assertThat(parses).hasValue(0);
+    }
+
+    @Test
+    @DisplayName("Should parse plain queries once and reuse the cached document")
+    void shouldCachePlainQueries() {
+        ExecutionInput plain = ExecutionInput.newExecutionInput().query(QUERY).build();
+
+        provider.getDocumentAsync(plain, parser).join();
+        provider.getDocumentAsync(plain, parser).join();
+
+        assertThat(parses).hasValue(1);
+    }
+
+    private static ExecutionInput input(String query, String hash) {
+        return ExecutionInput.newExecutionInput()
+                .query(query)
+                .extensions(Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash)))
+                .build();
+    }
+
+}
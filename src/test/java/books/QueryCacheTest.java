@@ -0,0 +1,74 @@
+package books;
+
+import books.book.Book;
+import books.book.BookRepository;
+import books.cache.CacheRegion;
+import books.cache.CacheStats;
+import books.cache.QueryCache;
+import books.cache.QueryCacheProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Query Cache Tests")
+class QueryCacheTest {
+
+    private BookRepository bookRepository;
+    private QueryCache queryCache;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = new BookRepository();
+        bookRepository.init();
+        queryCache = new QueryCache(new QueryCacheProperties(Map.of(
+                "book", new QueryCacheProperties.Operation(2, Duration.ofMinutes(1)),
+                "search", new QueryCacheProperties.Operation(10, Duration.ofMinutes(1)))), bookRepository);
+    }
+
+    @Test
+    @DisplayName("Should serve repeated reads from the cache and evict least recently used entries")
+    void shouldCountHitsMissesAndEvictions() {
+        CacheRegion<Long, Book> cache = queryCache.region("book", (id, change) -> change.touchesBook(id));
+
+        cache.get(1L, () -> bookRepository.findById(1L));
+        cache.get(1L, () -> bookRepository.findById(1L));
+        cache.get(2L, () -> bookRepository.findById(2L));
+        cache.get(3L, () -> bookRepository.findById(3L));
+
+        assertThat(cache.stats()).isEqualTo(new CacheStats(2, 2, 1, 3, 1, 0, 0));
+    }
+
+    @Test
+    @DisplayName("Should invalidate only the entries a write affects")
+    void shouldInvalidatePrecisely() {
+        CacheRegion<String, List<Object>> cache = queryCache.region("search", (text, change) -> change.touchesText(text));
+        cache.get("spring", () -> bookRepository.search("spring", 10));
+        cache.get("kotlin", () -> bookRepository.search("kotlin", 10));
+
+        Book book = bookRepository.createBook("Spring AI in Action", bookRepository.findAuthorByName("Craig Walls"), 2025);
+
+        assertThat(cache.stats().invalidations()).isEqualTo(1);
+        assertThat(cache.get("spring", () -> bookRepository.search("spring", 10))).contains(book);
+        assertThat(cache.stats().hits()).isZero();
+        cache.get("kotlin", () -> List.of());
+        assertThat(cache.stats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should bypass the cache for operations without configuration")
+    void shouldBypassUnconfiguredOperations() {
+        CacheRegion<String, List<Book>> cache = queryCache.region("books", (all, change) -> change.touchesBooks());
+
+        cache.get("all", bookRepository::findAll);
+        cache.get("all", bookRepository::findAll);
+
+        assertThat(cache.stats()).isEqualTo(new CacheStats(0, 0, 0, 0, 0, 0, 0));
+    }
+
+}
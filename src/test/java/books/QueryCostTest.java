@@ -0,0 +1,112 @@
+package books;
+
+import books.graphql.QueryCostInstrumentation;
+import books.graphql.QueryCostProperties;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Query Cost Tests")
+class QueryCostTest {
+
+    private final CountDownLatch fetching = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final GraphQLSchema schema = schema();
+
+    @Test
+    @DisplayName("Should report the estimated cost and depth in the response extensions")
+    void shouldReportCost() {
+        ExecutionResult result = graphQl(100, 6, 1000).execute(
+                "{ booksPaginated(first: 5) { edges { node { title author { name } } } } }");
+
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(cost(result)).containsEntry("estimated", 26L).containsEntry("depth", 5);
+    }
+
+    @Test
+    @DisplayName("Should reject documents that are too deep before executing them")
+    void shouldRejectDeepQueries() {
+        ExecutionResult result = graphQl(100_000, 5, 1_000_000).execute(
+                "{ authors { books { author { books { author { name } } } } } }");
+
+        assertThat(result.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getExtensions()).containsEntry("classification", "QueryTooDeep"));
+        assertThat(cost(result)).containsEntry("depth", 6);
+    }
+
+    @Test
+    @DisplayName("Should multiply list costs by page size arguments, including variables")
+    void shouldRejectExpensiveQueries() {
+        GraphQL graphQl = graphQl(100, 10, 1000);
+        String query = "query Page($n: Int) { booksPaginated(first: $n) { edges { node { id } } } }";
+
+        ExecutionResult small = graphQl.execute(ExecutionInput.newExecutionInput(query).variables(Map.of("n", 10)).build());
+        ExecutionResult large = graphQl.execute(ExecutionInput.newExecutionInput(query).variables(Map.of("n", 50)).build());
+        ExecutionResult unbounded = graphQl.execute("{ authors { books { title } } }");
+
+        assertThat(small.getErrors()).isEmpty();
+        assertThat(cost(small)).containsEntry("estimated", 31L);
+        assertThat(large.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getExtensions()).containsEntry("classification", "QueryTooExpensive"));
+        assertThat(cost(unbounded)).containsEntry("estimated", 421L);
+    }
+
+    @Test
+    @DisplayName("Should admit concurrent queries by cost rather than by count")
+    void shouldLimitConcurrencyByCost() throws Exception {
+        GraphQL graphQl = graphQl(100, 10, 30);
+        CompletableFuture<ExecutionResult> running = CompletableFuture.supplyAsync(() -> graphQl.execute("{ books { title } }"));
+        assertThat(fetching.await(5, TimeUnit.SECONDS)).isTrue();
+
+        ExecutionResult cheap = graphQl.execute("{ book(id: 1) { title } }");
+        ExecutionResult expensive = graphQl.execute("{ books { title } }");
+        release.countDown();
+
+        assertThat(cheap.getErrors()).isEmpty();
+        assertThat(expensive.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getExtensions()).containsEntry("classification", "ServerOverCapacity"));
+        assertThat(running.get(5, TimeUnit.SECONDS).getErrors()).isEmpty();
+        assertThat(graphQl.execute("{ books { title } }").getErrors()).isEmpty();
+    }
+
+    private GraphQL graphQl(int maxCost, int maxDepth, int capacity) {
+        var properties = new QueryCostProperties(maxCost, maxDepth, 20, capacity, Duration.ofMillis(50), Map.of());
+        return GraphQL.newGraphQL(schema).instrumentation(new QueryCostInstrumentation(properties)).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cost(ExecutionResult result) {
+        return (Map<String, Object>) result.getExtensions().get("cost");
+    }
+
+    private GraphQLSchema schema() {
+        var schemaFile = new InputStreamReader(getClass().getResourceAsStream("/graphql/schema.graphqls"), StandardCharsets.UTF_8);
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", type -> type.dataFetcher("books", env -> {
+                    fetching.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return List.of();
+                }))
+                .type("SearchItem", type -> type.typeResolver(env -> null))
+                .build();
+        return new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(schemaFile), wiring);
+    }
+
+}
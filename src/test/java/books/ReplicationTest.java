@@ -0,0 +1,199 @@
+package books;
+
+import books.book.Author;
+import books.book.Book;
+import books.book.BookRepository;
+import books.book.CatalogChange;
+import books.book.ReplicaFollower;
+import books.book.ReplicationStatus;
+import books.subscription.BookChangeEvent;
+import books.subscription.BookChangeHub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Replication Tests")
+class ReplicationTest {
+
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        contexts.reversed().forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    @DisplayName("Should apply the primary's writes on the replica and refuse writes there")
+    void shouldFollowPrimary() {
+        ConfigurableApplicationContext primary = start("books.replication.role=primary");
+        ConfigurableApplicationContext replica = start("books.replication.role=replica",
+                "books.replication.primary-url=http://localhost:" + port(primary));
+        BookRepository primaryBooks = primary.getBean(BookRepository.class);
+        BookRepository replicaBooks = replica.getBean(BookRepository.class);
+
+        Author author = primaryBooks.createAuthor("Ada Lovelace");
+        Book added = primaryBooks.createBook("Notes on the Analytical Engine", author, 1843);
+        Long deletedId = primaryBooks.findAll().getFirst().id();
+        primaryBooks.deleteBookById(deletedId);
+
+        awaitTrue(() -> replicaBooks.findById(added.id()) != null && replicaBooks.findById(deletedId) == null);
+        assertThat(replicaBooks.findById(added.id())).isEqualTo(added);
+        assertThat(replicaBooks.findAuthorByName("Ada Lovelace")).isEqualTo(author);
+        assertThat(replicaBooks.findAll()).containsExactlyElementsOf(primaryBooks.findAll());
+
+        ReplicationStatus status = replica.getBean(ReplicaFollower.class).status();
+        assertThat(status.connected()).isTrue();
+        assertThat(status.lagChanges()).isZero();
+        assertThat(status.lagSeconds()).isZero();
+        assertThatThrownBy(() -> replicaBooks.createBook("Local", author, 2025))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("Should catch up from a snapshot when the primary no longer retains the changes")
+    void shouldCatchUpFromSnapshot() {
+        ConfigurableApplicationContext primary = start("books.replication.role=primary",
+                "books.replication.retained-changes=2");
+        BookRepository primaryBooks = primary.getBean(BookRepository.class);
+        Author author = primaryBooks.createAuthor("Ada Lovelace");
+        for (int i = 0; i < 5; i++) {
+            primaryBooks.createBook("Before " + i, author, 2000 + i);
+        }
+
+        ConfigurableApplicationContext replica = start("books.replication.role=replica",
+                "books.replication.primary-url=http://localhost:" + port(primary));
+        BookRepository replicaBooks = replica.getBean(BookRepository.class);
+        ReplicaFollower follower = replica.getBean(ReplicaFollower.class);
+        assertThat(replicaBooks.findAll()).containsExactlyElementsOf(primaryBooks.findAll());
+
+        // more writes than the primary retains between two polls only cost the replica another snapshot
+        for (int i = 0; i < 5; i++) {
+            primaryBooks.createBook("After " + i, author, 2010 + i);
+        }
+        awaitTrue(() -> replicaBooks.findAll().equals(primaryBooks.findAll()));
+        assertThat(follower.status().snapshots()).isGreaterThanOrEqualTo(1);
+        awaitTrue(() -> follower.status().lagChanges() == 0);
+    }
+
+    @Test
+    @DisplayName("Should report only the missed books to the replica's subscribers when it catches up from a snapshot")
+    void shouldPublishOnlyMissedBooksOnCatchUp() {
+        ConfigurableApplicationContext primary = start("books.replication.role=primary",
+                "books.replication.retained-changes=2");
+        BookRepository primaryBooks = primary.getBean(BookRepository.class);
+        Author author = primaryBooks.createAuthor("Ada Lovelace");
+        ConfigurableApplicationContext replica = start("books.replication.role=replica",
+                "books.replication.primary-url=http://localhost:" + port(primary));
+        BookRepository replicaBooks = replica.getBean(BookRepository.class);
+        ReplicaFollower follower = replica.getBean(ReplicaFollower.class);
+        BookChangeHub hub = replica.getBean(BookChangeHub.class);
+
+        List<Book> added = new CopyOnWriteArrayList<>();
+        List<Book> deleted = new CopyOnWriteArrayList<>();
+        List<BookChangeEvent> changed = new CopyOnWriteArrayList<>();
+        Disposable subscriptions = Disposables.composite(
+                hub.books(CatalogChange::addedBooks).subscribe(added::add),
+                hub.books(CatalogChange::deletedBooks).subscribe(deleted::add),
+                hub.changes(null).subscribe(changed::add));
+        awaitTrue(() -> hub.subscriberCount() == 3);
+
+        // bursts of writes outpace the ring of 2 between two polls, so the replica loads at least one more snapshot
+        List<Book> written = new ArrayList<>();
+        long snapshots = follower.status().snapshots();
+        for (int round = 0; round < 20 && follower.status().snapshots() == snapshots; round++) {
+            for (int i = 0; i < 5; i++) {
+                written.add(primaryBooks.createBook("After " + round + "." + i, author, 2025));
+            }
+            awaitTrue(() -> replicaBooks.findAll().equals(primaryBooks.findAll()));
+        }
+        assertThat(follower.status().snapshots()).isGreaterThan(snapshots);
+        awaitTrue(() -> added.size() >= written.size());
+        awaitTrue(() -> changed.stream().mapToInt(event -> event.added().size()).sum() >= written.size());
+
+        assertThat(added).containsExactlyElementsOf(written);
+        assertThat(deleted).isEmpty();
+        assertThat(changed).flatExtracting(BookChangeEvent::added).containsExactlyElementsOf(written);
+        assertThat(changed).allSatisfy(event -> assertThat(event.deleted()).isEmpty());
+        subscriptions.dispose();
+    }
+
+    @Test
+    @DisplayName("Should converge on a columnar replica while the primary writes during its snapshots")
+    void shouldConvergeWithWritesDuringSnapshots() throws Exception {
+        ConfigurableApplicationContext primary = start("books.replication.role=primary",
+                "books.replication.retained-changes=4", "books.data.storage=columnar");
+        BookRepository primaryBooks = primary.getBean(BookRepository.class);
+        Author author = primaryBooks.createAuthor("Ada Lovelace");
+
+        // each round adds two books and deletes the first again, so a snapshot taken mid-round that also held
+        // later changes would make the replica re-add a deleted book below the newest one
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = Thread.ofVirtual().start(() -> {
+            for (int i = 0; writing.get(); i++) {
+                Book first = primaryBooks.createBook("First " + i, author, 2000);
+                primaryBooks.createBook("Second " + i, author, 2001);
+                primaryBooks.deleteBookById(first.id());
+            }
+        });
+        BookRepository replicaBooks;
+        ReplicaFollower follower;
+        try {
+            ConfigurableApplicationContext replica = start("books.replication.role=replica",
+                    "books.replication.primary-url=http://localhost:" + port(primary), "books.data.storage=columnar");
+            replicaBooks = replica.getBean(BookRepository.class);
+            follower = replica.getBean(ReplicaFollower.class);
+            // the writer outpaces the ring of 4, so the replica keeps loading snapshots taken between writes
+            awaitTrue(() -> follower.status().snapshots() >= 2);
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+
+        awaitTrue(() -> replicaBooks.findAll().equals(primaryBooks.findAll()));
+        awaitTrue(() -> follower.status().lagChanges() == 0);
+        Book added = primaryBooks.createBook("After the writer", author, 2025);
+        awaitTrue(() -> added.equals(replicaBooks.findById(added.id())));
+    }
+
+    private ConfigurableApplicationContext start(String... properties) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0", "books.replication.poll-timeout=200ms",
+                        "books.replication.retry-delay=50ms")
+                .properties(properties)
+                .run();
+        contexts.add(context);
+        return context;
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package books;
+
+import books.graphql.DebugHeaderInterceptor;
+import books.graphql.ParallelExecutionProperties;
+import books.graphql.ParallelResolverInstrumentation;
+import books.graphql.ResolverMetrics;
+import books.graphql.ResolverMetricsInstrumentation;
+import books.graphql.ResolverMetricsProperties;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Resolver Metrics Tests")
+class ResolverMetricsTest {
+
+    private static final String QUERY = "query AllAuthors { authors { name } books { title } }";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("Should time resolvers per operation and field coordinate")
+    void shouldRecordFieldMetrics() {
+        GraphQL graphQl = graphQl(true);
+
+        graphQl.execute(QUERY);
+        graphQl.execute(QUERY);
+
+        Timer authors = registry.get("books.graphql.field")
+                .tags("operation", "AllAuthors", "field", "Query.authors", "outcome", "success").timer();
+        assertThat(authors.count()).isEqualTo(2);
+        assertThat(registry.get("books.graphql.field.result.size").tags("field", "Query.books").summary().totalAmount())
+                .isEqualTo(6);
+        assertThat(registry.find("books.graphql.field").tags("field", "Author.name").timer()).isNull();
+    }
+
+    @Test
+    @DisplayName("Should return a per-field trace only when the debug flag is set")
+    @SuppressWarnings("unchecked")
+    void shouldTraceOnRequest() {
+        GraphQL graphQl = graphQl(false);
+
+        ExecutionResult plain = graphQl.execute(QUERY);
+        ExecutionResult traced = graphQl.execute(ExecutionInput.newExecutionInput(QUERY)
+                .graphQLContext(Map.of(DebugHeaderInterceptor.TRACE, true))
+                .build());
+
+        assertThat(plain.getExtensions()).isNull();
+        Map<String, Object> trace = (Map<String, Object>) traced.getExtensions().get("resolvers");
+        assertThat(trace).containsEntry("operation", "AllAuthors");
+        assertThat((List<Map<String, Object>>) trace.get("fields"))
+                .extracting(field -> field.get("field"))
+                .containsExactlyInAnyOrder("Query.authors", "Query.books");
+        assertThat(registry.getMeters()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should record allocation for synchronous resolvers only, not for the ones forked onto other threads")
+    void shouldNotAttributeForkedAllocation() {
+        graphQl(true).execute(QUERY);
+        assertThat(registry.get("books.graphql.field.allocated").tags("field", "Query.books").summary().count())
+                .isEqualTo(1);
+
+        SimpleMeterRegistry forkedRegistry = new SimpleMeterRegistry();
+        var metrics = new ResolverMetrics(forkedRegistry, new ResolverMetricsProperties(true, true, null, 0));
+        var parallel = new ParallelResolverInstrumentation(
+                new ParallelExecutionProperties(true, Duration.ofSeconds(5), 4), fetcher -> true);
+        GraphQL forked = GraphQL.newGraphQL(schema())
+                .instrumentation(new ChainedInstrumentation(parallel, new ResolverMetricsInstrumentation(metrics)))
+                .build();
+
+        ExecutionResult result = forked.execute(QUERY);
+
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(forkedRegistry.get("books.graphql.field").tags("field", "Query.books").timer().count()).isEqualTo(1);
+        assertThat(forkedRegistry.find("books.graphql.field.allocated").summaries()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should record data loader batch sizes")
+    void shouldRecordBatchSizes() {
+        ResolverMetrics metrics = new ResolverMetrics(registry, new ResolverMetricsProperties(true, false, null, 0));
+
+        metrics.recordBatch("booksByAuthor", 24);
+        metrics.recordBatch("booksByAuthor", 2);
+
+        var batches = registry.get("books.graphql.dataloader.batch.size").tag("loader", "booksByAuthor").summary();
+        assertThat(batches.count()).isEqualTo(2);
+        assertThat(batches.max()).isEqualTo(24);
+    }
+
+    private GraphQL graphQl(boolean enabled) {
+        var metrics = new ResolverMetrics(registry, new ResolverMetricsProperties(enabled, true, null, 0));
+        return GraphQL.newGraphQL(schema()).instrumentation(new ResolverMetricsInstrumentation(metrics)).build();
+    }
+
+    private GraphQLSchema schema() {
+        var schemaFile = new InputStreamReader(getClass().getResourceAsStream("/graphql/schema.graphqls"), StandardCharsets.UTF_8);
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", type -> type
+                        .dataFetcher("authors", env -> List.of(Map.of("name", "Craig Walls")))
+                        .dataFetcher("books", env -> List.of(Map.of("title", "A"), Map.of("title", "B"), Map.of("title", "C"))))
+                .type("SearchItem", type -> type.typeResolver(env -> null))
+                .build();
+        return new SchemaGenerator().makeExecutableSchema(new SchemaParser().parse(schemaFile), wiring);
+    }
+
+}